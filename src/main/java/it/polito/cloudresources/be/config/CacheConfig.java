@@ -1,34 +1,62 @@
 package it.polito.cloudresources.be.config;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.polito.cloudresources.be.config.cache.CoalescingCache;
+import it.polito.cloudresources.be.config.cache.RevalidatingCache;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
-import java.util.Arrays;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import it.polito.cloudresources.be.service.KeycloakService;
 
 /**
  * Configuration for caching in the application
- * Specifically designed to improve Keycloak service performance
+ * Specifically designed to improve Keycloak service performance.
+ * Every cache is bounded in size and expires its entries, so that changes made directly
+ * in Keycloak are eventually picked up. Hit/miss/eviction statistics are recorded and
+ * exported as cache metrics through the actuator.
+ * Synchronized lookups are coalesced per key, see {@link CoalescingCache}.
+ * Hot caches can be configured for refresh-ahead: entries are reloaded in the background once they
+ * reach a fraction of their TTL, and reloaded before being served once past it, see
+ * {@link RevalidatingCache}; the stale value is served, for a bounded grace period, only if that
+ * reload is slow or fails.
  */
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties(CacheConfig.CacheProperties.class)
 @Profile("!dev") // Only use in non-dev environments where we use the real Keycloak service
+@Slf4j
 public class CacheConfig {
-    
+
+    // Background reloads block on Keycloak, so they run on virtual threads rather than the common pool
+    private final ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
     /**
-     * Configure the cache manager with all required caches
+     * All caches needed by KeycloakService
      */
-    @Bean
-    public CacheManager cacheManager() {
-        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
-        
-        // Configure all caches needed by KeycloakService
-        cacheManager.setCacheNames(Arrays.asList(
+    public static final List<String> KEYCLOAK_CACHE_NAMES = List.of(
             KeycloakService.USERS_CACHE,
             KeycloakService.USER_BY_ID_CACHE,
             KeycloakService.USER_BY_USERNAME_CACHE,
@@ -38,17 +66,140 @@ public class CacheConfig {
             KeycloakService.USER_GROUPS_CACHE,
             KeycloakService.GROUPS_CACHE,
             KeycloakService.GROUP_BY_ID_CACHE,
-            KeycloakService.GROUP_BY_NAME_CACHE,
             KeycloakService.GROUP_MEMBERS_CACHE,
             KeycloakService.USERS_IN_GROUP_CACHE,
             KeycloakService.USER_ADMIN_GROUPS_CACHE,
             KeycloakService.USER_SITES_CACHE,
             KeycloakService.USER_BY_ROLE_CACHE,
             KeycloakService.USER_SITE_ADMIN_STATUS,
-            "keycloak_user_global_admin",
-            "keycloak_user_admin_group_ids"
-        ));
-        
+            KeycloakService.USER_GLOBAL_ADMIN_CACHE,
+            KeycloakService.USER_ADMIN_GROUP_IDS_CACHE,
+            KeycloakService.GROUP_MEMBER_COUNT_CACHE
+    );
+
+    /**
+     * Configure the cache manager with all required caches
+     */
+    @Bean
+    public CacheManager cacheManager(CacheProperties cacheProperties, MeterRegistry meterRegistry,
+                                     ObjectProvider<KeycloakService> keycloakService) {
+        List<CoalescingCache> caches = new ArrayList<>();
+
+        for (String cacheName : KEYCLOAK_CACHE_NAMES) {
+            String spec = cacheProperties.getSpecs().getOrDefault(cacheName, cacheProperties.getDefaultSpec());
+            RefreshAhead refreshAhead = cacheProperties.getRefreshAhead().get(cacheName);
+            log.debug("Configuring cache {} with spec '{}'", cacheName, spec);
+
+            Caffeine<Object, Object> builder = Caffeine.from(CaffeineSpec.parse(spec)).recordStats();
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache;
+            CoalescingCache cache;
+            if (refreshAhead == null) {
+                nativeCache = builder.build();
+                cache = new CoalescingCache(new CaffeineCache(cacheName, nativeCache), meterRegistry);
+            } else {
+                if (!KeycloakService.REFRESHABLE_CACHES.contains(cacheName)) {
+                    throw new IllegalStateException("Refresh-ahead is not supported for cache " + cacheName);
+                }
+                log.debug("Cache {} refreshes after {} and serves stale entries for up to {}",
+                        cacheName, refreshAhead.getRefreshAfter(), refreshAhead.getStaleGrace());
+                nativeCache = builder
+                        .refreshAfterWrite(refreshAhead.getRefreshAfter())
+                        .expireAfterWrite(refreshAhead.getTtl().plus(refreshAhead.getStaleGrace()))
+                        .executor(refreshExecutor)
+                        .build(reloader(cacheName, keycloakService));
+                cache = new RevalidatingCache(new CaffeineCache(cacheName, nativeCache), meterRegistry,
+                        refreshAhead.getTtl(), refreshAhead.getReloadTimeout());
+            }
+
+            // The decorated caches are not recognised by the actuator's cache metrics registrar, bind them here
+            CaffeineCacheMetrics.monitor(meterRegistry, nativeCache, cacheName, "cache.manager", "cacheManager");
+            caches.add(cache);
+        }
+
+        // Unknown cache names are rejected instead of creating unbounded caches on the fly
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(caches);
         return cacheManager;
     }
-}
\ No newline at end of file
+
+    /**
+     * Loader used only for background refreshes: first loads go through the @Cacheable method.
+     * A failed reload keeps the current value, a null one (entry deleted in Keycloak) removes it.
+     */
+    private CacheLoader<Object, Object> reloader(String cacheName, ObjectProvider<KeycloakService> keycloakService) {
+        return new CacheLoader<>() {
+            @Override
+            public Object load(Object key) {
+                return null;
+            }
+
+            @Override
+            public Object reload(Object key, Object oldValue) {
+                return keycloakService.getObject().reloadCacheEntry(cacheName, key);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdownRefreshExecutor() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Cache policies, expressed as Caffeine specs (e.g. "maximumSize=1000,expireAfterWrite=5m")
+     */
+    @Data
+    @ConfigurationProperties(prefix = "app.cache")
+    public static class CacheProperties {
+
+        /**
+         * Spec applied to every cache without a specific entry in specs
+         */
+        private String defaultSpec = "maximumSize=10000,expireAfterWrite=10m";
+
+        /**
+         * Per-cache specs, keyed by cache name
+         */
+        private Map<String, String> specs = new HashMap<>();
+
+        /**
+         * Refresh-ahead settings, keyed by cache name. The expiry of these caches is derived from
+         * the settings, so their spec must not set one.
+         */
+        private Map<String, RefreshAhead> refreshAhead = new HashMap<>();
+    }
+
+    /**
+     * Refresh-ahead / stale-while-revalidate policy of a cache
+     */
+    @Data
+    public static class RefreshAhead {
+
+        /**
+         * How long an entry is considered fresh
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * Fraction of the TTL after which a read triggers a background reload
+         */
+        private double refreshFraction = 0.75;
+
+        /**
+         * How long past its TTL an entry may still be served while it cannot be reloaded
+         */
+        private Duration staleGrace = Duration.ofMinutes(5);
+
+        /**
+         * How long a read of an entry past its TTL waits for the reload before serving the stale value
+         */
+        private Duration reloadTimeout = Duration.ofSeconds(2);
+
+        public Duration getRefreshAfter() {
+            if (refreshFraction <= 0 || refreshFraction > 1) {
+                throw new IllegalStateException("refresh-fraction must be in (0, 1], got " + refreshFraction);
+            }
+            return Duration.ofMillis((long) (ttl.toMillis() * refreshFraction));
+        }
+    }
+}
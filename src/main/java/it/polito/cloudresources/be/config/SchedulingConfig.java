@@ -0,0 +1,12 @@
+package it.polito.cloudresources.be.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the @Scheduled background jobs (webhook retries, realm directory sync, booking index reload)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -95,6 +95,7 @@ public class SecurityConfig {
                         .requestMatchers("/resource-types/**").authenticated()
                         .requestMatchers("/users/**").authenticated()
                         .requestMatchers("/events/**").authenticated()
+                        .requestMatchers("/availability/**").authenticated()
                         .anyRequest().authenticated()
                 )
                 .oauth2ResourceServer(oauth2 -> oauth2
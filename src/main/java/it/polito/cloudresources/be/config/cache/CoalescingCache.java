@@ -0,0 +1,135 @@
+package it.polito.cloudresources.be.config.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Cache decorator that makes synchronized lookups ({@code @Cacheable(sync = true)}) single-flight.
+ * Concurrent callers missing the same key wait for the one load already in progress instead of each
+ * calling the backing service; Caffeine guarantees the per-key atomicity, this class records whether
+ * each call was served from the cache, joined an in-flight load or performed the load itself.
+ * Loads returning null are shared with the waiting callers but not kept in the cache.
+ */
+public class CoalescingCache implements Cache {
+
+    public static final String METRIC_NAME = "cache.singleflight";
+
+    private final CaffeineCache delegate;
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter loads;
+
+    public CoalescingCache(CaffeineCache delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.hits = counter(meterRegistry, delegate.getName(), "hit");
+        this.coalesced = counter(meterRegistry, delegate.getName(), "coalesced");
+        this.loads = counter(meterRegistry, delegate.getName(), "load");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String cacheName, String result) {
+        return Counter.builder(METRIC_NAME)
+                .description("Synchronized cache lookups by outcome")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    @Nullable
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        // Peek without touching statistics, so that Caffeine's own hit/miss counts stay accurate
+        if (delegate.getNativeCache().policy().getIfPresentQuietly(key) != null) {
+            hits.increment();
+            return delegate.get(key, valueLoader);
+        }
+
+        AtomicBoolean loaded = new AtomicBoolean(false);
+        T value = delegate.get(key, () -> {
+            loaded.set(true);
+            return valueLoader.call();
+        });
+
+        if (loaded.get()) {
+            loads.increment();
+            if (value == null) {
+                delegate.evict(key);
+            }
+        } else {
+            // Someone else loaded the value between our peek and the synchronized get
+            coalesced.increment();
+        }
+        return value;
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    @Nullable
+    public <T> T get(Object key, @Nullable Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    @Nullable
+    public CompletableFuture<?> retrieve(Object key) {
+        return delegate.retrieve(key);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return delegate.retrieve(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, @Nullable Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+}
@@ -0,0 +1,73 @@
+package it.polito.cloudresources.be.config.cache;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Refresh-ahead cache whose entries past their TTL are reloaded before being served. The reload is
+ * shared with any refresh of the same key already in flight; the stale value is served only if the
+ * reload fails or does not complete within the reload timeout, and only until the entry expires.
+ * Entries younger than the TTL are served as they are, and refreshed in the background by Caffeine.
+ */
+@Slf4j
+public class RevalidatingCache extends CoalescingCache {
+
+    private final LoadingCache<Object, Object> nativeCache;
+    private final Duration ttl;
+    private final Duration reloadTimeout;
+
+    @SuppressWarnings("unchecked")
+    public RevalidatingCache(CaffeineCache delegate, MeterRegistry meterRegistry, Duration ttl, Duration reloadTimeout) {
+        super(delegate, meterRegistry);
+        this.nativeCache = (LoadingCache<Object, Object>) delegate.getNativeCache();
+        this.ttl = ttl;
+        this.reloadTimeout = reloadTimeout;
+    }
+
+    @Override
+    @Nullable
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        revalidateIfExpired(key);
+        return super.get(key, valueLoader);
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper get(Object key) {
+        revalidateIfExpired(key);
+        return super.get(key);
+    }
+
+    @Override
+    @Nullable
+    public <T> T get(Object key, @Nullable Class<T> type) {
+        revalidateIfExpired(key);
+        return super.get(key, type);
+    }
+
+    private void revalidateIfExpired(Object key) {
+        boolean expired = nativeCache.policy().expireAfterWrite()
+                .flatMap(expiration -> expiration.ageOf(key))
+                .map(age -> age.compareTo(ttl) > 0)
+                .orElse(false);
+        if (!expired) {
+            return;
+        }
+        try {
+            nativeCache.refresh(key).get(reloadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Serving a stale entry of cache {}, reload failed: {}", getName(), e.toString());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package it.polito.cloudresources.be.config.persist;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Reports at startup the indexes of the hot queries that are missing from the database, e.g. when the
+ * migrations are disabled or failed on a vendor. An index is present if one on the same table starts
+ * with the expected columns, whatever its name.
+ * Keep the list in line with the migrations in db/migration.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaIndexVerifier {
+
+    private static final List<ExpectedIndex> EXPECTED_INDEXES = List.of(
+            new ExpectedIndex("idx_events_resource_time", "events", List.of("resource_id", "start_time", "end_time")),
+            new ExpectedIndex("idx_events_keycloak_id", "events", List.of("keycloak_id")),
+            new ExpectedIndex("idx_notifications_user_read", "notifications", List.of("keycloak_id", "read", "created_at")),
+            new ExpectedIndex("idx_audit_logs_timestamp", "audit_logs", List.of("timestamp")),
+            new ExpectedIndex("idx_webhook_logs_retry", "webhook_logs", List.of("success", "next_retry_at")),
+            new ExpectedIndex("idx_resources_site_id", "resources", List.of("site_id")),
+            new ExpectedIndex("idx_resource_closure_descendant", "resource_closure", List.of("descendant_id", "ancestor_id"))
+    );
+
+    private final DataSource dataSource;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyIndexes() {
+        try (Connection connection = dataSource.getConnection()) {
+            List<ExpectedIndex> missing = findMissingIndexes(connection);
+            if (missing.isEmpty()) {
+                log.info("All {} expected indexes are present", EXPECTED_INDEXES.size());
+                return;
+            }
+            missing.forEach(index -> log.warn("Missing index {} on {} ({}), queries on it will scan the table",
+                    index.name(), index.table(), String.join(", ", index.columns())));
+        } catch (SQLException e) {
+            log.warn("Could not verify the database indexes: {}", e.getMessage());
+        }
+    }
+
+    private List<ExpectedIndex> findMissingIndexes(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, Collection<List<String>>> indexesByTable = new HashMap<>();
+        List<ExpectedIndex> missing = new ArrayList<>();
+        for (ExpectedIndex expected : EXPECTED_INDEXES) {
+            Collection<List<String>> indexes = indexesByTable.get(expected.table());
+            if (indexes == null) {
+                indexes = readIndexes(metaData, connection.getCatalog(), connection.getSchema(), expected.table());
+                indexesByTable.put(expected.table(), indexes);
+            }
+            if (indexes.stream().noneMatch(columns -> startsWith(columns, expected.columns()))) {
+                missing.add(expected);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the columns of each index of a table, in index order and lower case
+     */
+    private static Collection<List<String>> readIndexes(DatabaseMetaData metaData, String catalog, String schema,
+                                                        String table) throws SQLException {
+        String tableName = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Map<String, SortedMap<Short, String>> columnsByIndex = new HashMap<>();
+        // Approximate, so that no statistics are computed (Oracle analyzes the table otherwise)
+        try (ResultSet rows = metaData.getIndexInfo(catalog, schema, tableName, false, true)) {
+            while (rows.next()) {
+                String indexName = rows.getString("INDEX_NAME");
+                String columnName = rows.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) {
+                    continue; // Table statistics or expression columns
+                }
+                columnsByIndex.computeIfAbsent(indexName, name -> new TreeMap<>())
+                        .put(rows.getShort("ORDINAL_POSITION"), columnName.toLowerCase(Locale.ROOT));
+            }
+        }
+        return columnsByIndex.values().stream().map(columns -> List.copyOf(columns.values())).toList();
+    }
+
+    private static boolean startsWith(List<String> columns, List<String> prefix) {
+        return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private record ExpectedIndex(String name, String table, List<String> columns) {
+    }
+}
@@ -0,0 +1,51 @@
+package it.polito.cloudresources.be.config.persist;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ * Runs the versioned schema migrations (db/migration/{vendor}) after Hibernate has created or
+ * updated the tables, instead of before the EntityManagerFactory as Spring Boot does by default:
+ * the tables are still managed by ddl-auto, the migrations add what the mappings cannot express
+ * or should not own, such as the indexes of the hot queries.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "spring.flyway", name = "enabled", matchIfMissing = true)
+public class SchemaMigrationConfig {
+
+    /**
+     * Keeps Spring Boot from migrating before the tables exist
+     */
+    @Bean
+    public FlywayMigrationStrategy deferredMigrationStrategy() {
+        return flyway -> { };
+    }
+
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public DeferredMigration deferredMigration(Flyway flyway) {
+        return new DeferredMigration(flyway);
+    }
+
+    @RequiredArgsConstructor
+    @Slf4j
+    public static class DeferredMigration implements InitializingBean {
+
+        private final Flyway flyway;
+
+        @Override
+        public void afterPropertiesSet() {
+            MigrateResult result = flyway.migrate();
+            log.info("Schema migrations applied: {}, schema version: {}",
+                    result.migrationsExecuted, result.targetSchemaVersion);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package it.polito.cloudresources.be.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.polito.cloudresources.be.dto.AvailableSlotDTO;
+import it.polito.cloudresources.be.dto.FreeBusyDTO;
+import it.polito.cloudresources.be.service.AvailabilityService;
+import it.polito.cloudresources.be.util.ControllerUtils;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * REST API controller for searching the free time of resources
+ */
+@RestController
+@RequestMapping("/availability")
+@RequiredArgsConstructor
+@Tag(name = "Availability", description = "API for finding free slots of resources")
+@SecurityRequirement(name = "bearer-auth")
+public class AvailabilityController {
+
+    private final AvailabilityService availabilityService;
+    private final ControllerUtils utils;
+
+    /**
+     * Search the earliest free slots
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Search free slots", description = "Finds the earliest free slots of the given duration among the given resources, or the resources of a type, taking their hierarchy into account")
+    public ResponseEntity<Object> searchAvailability(
+            @RequestParam(required = false) List<Long> resourceIds,
+            @RequestParam(required = false) Long resourceTypeId,
+            @RequestParam int durationMinutes,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to,
+            @RequestParam(defaultValue = "10") int count,
+            Authentication authentication) {
+
+        String currentUserKeycloakId = utils.getCurrentUserKeycloakId(authentication);
+
+        try {
+            List<AvailableSlotDTO> slots = availabilityService.searchAvailability(resourceIds, resourceTypeId,
+                    Duration.ofMinutes(durationMinutes), from, to, count, currentUserKeycloakId);
+            return ResponseEntity.ok(slots);
+        } catch (AccessDeniedException e) {
+            return utils.createErrorResponse(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (EntityNotFoundException e) {
+            return utils.createErrorResponse(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the free/busy calendar of a site
+     */
+    @GetMapping("/free-busy")
+    @Operation(summary = "Get site free/busy calendar", description = "Returns, for every resource of a site, which fixed-length slots of the window are busy, as a bitmap or as run lengths")
+    public ResponseEntity<Object> getFreeBusy(
+            @RequestParam String siteId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime to,
+            @RequestParam(defaultValue = "60") int slotMinutes,
+            @RequestParam(defaultValue = "BITMAP") FreeBusyDTO.Encoding encoding,
+            Authentication authentication) {
+
+        String currentUserKeycloakId = utils.getCurrentUserKeycloakId(authentication);
+
+        try {
+            return ResponseEntity.ok(availabilityService.getFreeBusy(siteId, from, to, slotMinutes, encoding, currentUserKeycloakId));
+        } catch (AccessDeniedException e) {
+            return utils.createErrorResponse(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
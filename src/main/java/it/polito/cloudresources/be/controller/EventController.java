@@ -1,22 +1,31 @@
 package it.polito.cloudresources.be.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.polito.cloudresources.be.dto.ApiResponseDTO;
+import it.polito.cloudresources.be.dto.EventBatchRequestDTO;
+import it.polito.cloudresources.be.dto.EventBatchResultDTO;
 import it.polito.cloudresources.be.dto.EventDTO;
 import it.polito.cloudresources.be.service.EventService;
+import it.polito.cloudresources.be.service.ResourceBusyException;
 import it.polito.cloudresources.be.util.ControllerUtils;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.ZonedDateTime;
 import java.util.List;
 
@@ -30,25 +39,57 @@ import java.util.List;
 @SecurityRequirement(name = "bearer-auth")
 public class EventController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // Suggested to the clients whose booking could not be serialized in time
+    private static final int RETRY_AFTER_SECONDS = 1;
+
     private final EventService eventService;
     private final ControllerUtils utils;
+    private final ObjectMapper objectMapper;
 
     /**
      * Get all events
+     * With a limit or a cursor the events are returned a page at a time, in (start, id) order; with
+     * Accept: application/x-ndjson they are streamed, one JSON event per line
      */
     @GetMapping
-    @Operation(summary = "Get all events", description = "Retrieves all events with optional filtering based on user's site access")
-    public ResponseEntity<List<EventDTO>> getAllEvents(
+    @Operation(summary = "Get all events", description = "Retrieves all events with optional filtering based on user's site access. " +
+            "Pass limit (and then the nextCursor of each page as cursor) to page through them, or accept application/x-ndjson to stream them")
+    public ResponseEntity<?> getAllEvents(
             @RequestParam(required = false) Long resourceId,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime endDate,
             @RequestParam(required = false) String siteId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
             Authentication authentication) {
 
         String currentUserKeycloakId = utils.getCurrentUserKeycloakId(authentication);
-        List<EventDTO> events;
-        
+
         try {
+            if (accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE)) {
+                EventService.EventFilter filter = eventService.resolveEventFilter(siteId, resourceId, startDate, endDate, currentUserKeycloakId);
+                StreamingResponseBody body = outputStream -> eventService.streamEvents(filter, chunk -> {
+                    try {
+                        for (EventDTO event : chunk) {
+                            outputStream.write(objectMapper.writeValueAsBytes(event));
+                            outputStream.write('\n');
+                        }
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+            }
+
+            if (limit != null || cursor != null) {
+                EventService.EventFilter filter = eventService.resolveEventFilter(siteId, resourceId, startDate, endDate, currentUserKeycloakId);
+                return ResponseEntity.ok(eventService.getEventPage(filter, cursor, limit != null ? limit : DEFAULT_PAGE_SIZE));
+            }
+
+            List<EventDTO> events;
             if (siteId != null) {
                 events = eventService.getEventsBySite(siteId, currentUserKeycloakId);
             } else if (resourceId != null) {
@@ -64,6 +105,8 @@ public class EventController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (EntityNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (IllegalArgumentException e) {
+            return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
         }
     }
 
@@ -115,6 +158,32 @@ public class EventController {
             return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
         } catch (EntityNotFoundException e) {
             return utils.createErrorResponse(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (ResourceBusyException e) {
+            return utils.createRetryLaterResponse(e.getMessage(), RETRY_AFTER_SECONDS);
+        } catch (Exception e) {
+            return utils.createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create many events at once
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Create events in batch", description = "Creates many booking events at once, either all or nothing or as many as possible")
+    public ResponseEntity<Object> createEvents(
+            @Valid @RequestBody EventBatchRequestDTO request,
+            Authentication authentication) {
+
+        String keycloakId = utils.getCurrentUserKeycloakId(authentication);
+
+        try {
+            EventBatchResultDTO result = eventService.createEvents(request, keycloakId);
+            HttpStatus status = result.getCreated().isEmpty() ? HttpStatus.BAD_REQUEST : HttpStatus.CREATED;
+            return ResponseEntity.status(status).body(result);
+        } catch (IllegalStateException e) {
+            return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (ResourceBusyException e) {
+            return utils.createRetryLaterResponse(e.getMessage(), RETRY_AFTER_SECONDS);
         } catch (Exception e) {
             return utils.createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
         }
@@ -142,6 +211,8 @@ public class EventController {
             return utils.createErrorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
         } catch (EntityNotFoundException e) {
             return utils.createErrorResponse(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (ResourceBusyException e) {
+            return utils.createRetryLaterResponse(e.getMessage(), RETRY_AFTER_SECONDS);
         } catch (Exception e) {
             return utils.createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error: " + e.getMessage());
         }
@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.RestController;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import it.polito.cloudresources.be.dto.MembershipJobDTO;
 import it.polito.cloudresources.be.dto.SiteDTO;
 import it.polito.cloudresources.be.dto.users.UserDTO;
 import it.polito.cloudresources.be.service.SiteService;
@@ -90,6 +91,24 @@ public class SiteController {
         }
     }
     
+    /**
+     * Get the progress of the job adding all users to a new public site
+     */
+    @GetMapping("/{id}/membership-job")
+    @Operation(summary = "Get site membership job", description = "Retrieves the progress of the background job adding all users to a newly created public site (Global Admin or Site Admin only)")
+    public ResponseEntity<MembershipJobDTO> getSiteMembershipJob(@PathVariable String id, Authentication authentication) {
+        try {
+            String userId = utils.getCurrentUserKeycloakId(authentication);
+            return siteService.getSiteMembershipJob(id, userId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     /*
      * Update an existing site
     @PutMapping("/{id}")
@@ -0,0 +1,32 @@
+package it.polito.cloudresources.be.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Request to create many bookings at once, e.g. one resource per student for a lab session
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBatchRequestDTO {
+
+    public enum Mode {
+        /** Nothing is booked unless every booking can be made */
+        ALL_OR_NOTHING,
+        /** The bookings that can be made are, the others are reported */
+        BEST_EFFORT
+    }
+
+    // The events are validated one by one when booked, so that an invalid one is rejected by its index
+    @NotEmpty(message = "At least one event is required")
+    @Size(max = 1000, message = "At most 1000 events can be booked at once")
+    private List<EventDTO> events;
+
+    private Mode mode = Mode.ALL_OR_NOTHING;
+}
@@ -0,0 +1,30 @@
+package it.polito.cloudresources.be.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch of bookings: the events created and the bookings rejected, by their position in the request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBatchResultDTO {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Rejection {
+        private int index;
+        private String message;
+    }
+
+    private EventBatchRequestDTO.Mode mode;
+    private List<EventDTO> created;
+    private List<Rejection> rejected;
+}
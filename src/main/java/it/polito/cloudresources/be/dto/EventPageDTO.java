@@ -0,0 +1,18 @@
+package it.polito.cloudresources.be.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of events in (start, id) order, with the cursor of the next page (null on the last one)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventPageDTO {
+    private List<EventDTO> events;
+    private String nextCursor;
+}
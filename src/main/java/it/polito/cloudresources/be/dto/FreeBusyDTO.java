@@ -0,0 +1,49 @@
+package it.polito.cloudresources.be.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Free/busy calendar of the resources of a site: the window is divided in slots of fixed length,
+ * and each resource tells which ones are busy, i.e. overlap a booking of the resource or of its hierarchy
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FreeBusyDTO {
+
+    public enum Encoding {
+        /** Base64 of a little-endian bitset, bit i set when slot i is busy (java.util.BitSet#toByteArray) */
+        BITMAP,
+        /** Lengths of the alternating free and busy runs of slots, starting with a free one (possibly 0) */
+        RLE
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ResourceFreeBusy {
+        private Long resourceId;
+        private String resourceName;
+        private String bitmap;
+        private List<Integer> runs;
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSX")
+    private ZonedDateTime from;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSX")
+    private ZonedDateTime to;
+
+    private int slotMinutes;
+    private int slotCount;
+    private Encoding encoding;
+    private List<ResourceFreeBusy> resources;
+}
@@ -0,0 +1,36 @@
+package it.polito.cloudresources.be.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Progress of a bulk membership job (e.g. adding every user to a new public site)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MembershipJobDTO {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        COMPLETED_WITH_ERRORS
+    }
+
+    private String id;
+    private String description;
+    private Status status;
+    private int total;
+    private int succeeded;
+    private int failed;
+    private int attempt;
+    private List<String> failedItems;
+    private ZonedDateTime startedAt;
+    private ZonedDateTime finishedAt;
+}
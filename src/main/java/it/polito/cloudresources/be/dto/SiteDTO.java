@@ -24,4 +24,7 @@ public class SiteDTO {
     private List<String> adminIds;
     private List<String> adminNames;
     private int memberCount;
+    
+    // Set on creation of a public site: ID of the job adding all users to it, see GET /sites/{id}/membership-job
+    private String membershipJobId;
 }
\ No newline at end of file
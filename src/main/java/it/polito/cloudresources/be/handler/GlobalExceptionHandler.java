@@ -1,9 +1,12 @@
 package it.polito.cloudresources.be.handler;
 
 import it.polito.cloudresources.be.dto.ApiResponseDTO;
+import it.polito.cloudresources.be.service.KeycloakUnavailableException;
+import it.polito.cloudresources.be.service.ResourceBusyException;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -106,6 +109,32 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    /**
+     * Handle Keycloak being unavailable (circuit open, too many calls in flight or timeout)
+     */
+    @ExceptionHandler(KeycloakUnavailableException.class)
+    public ResponseEntity<ApiResponseDTO> handleKeycloakUnavailableException(
+            KeycloakUnavailableException ex, WebRequest request) {
+
+        ApiResponseDTO response = new ApiResponseDTO(false, "Identity provider temporarily unavailable, please retry later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(response);
+    }
+
+    /**
+     * Handle bookings whose locks could not be obtained in time (instance or database lock)
+     */
+    @ExceptionHandler(ResourceBusyException.class)
+    public ResponseEntity<ApiResponseDTO> handleResourceBusyException(
+            ResourceBusyException ex, WebRequest request) {
+
+        ApiResponseDTO response = new ApiResponseDTO(false, ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
+    }
+
     /**
      * Handle all other exceptions
      */
@@ -11,6 +11,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.stereotype.Component;
 
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * Mapper for converting between Event and EventDTO objects
  * Now using Keycloak IDs instead of User entities
@@ -74,6 +77,66 @@ public class EventMapper implements EntityMapper<EventDTO, Event> {
     
     @Override
     public EventDTO toDto(Event entity) {
+        EventDTO dto = toDtoWithoutUser(entity);
+        if (dto == null) {
+            return null;
+        }
+        
+        // Try to get username from Keycloak
+        try {
+            UserRepresentation user = keycloakService.getUserById(entity.getKeycloakId())
+                .orElse(null);
+                
+            if (user != null) {
+                dto.setUserName(user.getUsername());
+            }
+        } catch (Exception e) {
+            log.warn("Could not fetch username for Keycloak ID: {}", entity.getKeycloakId());
+        }
+        
+        return dto;
+    }
+    
+    /**
+     * Convert a list of events, resolving the users of all of them with a single bulk lookup
+     * instead of one lookup per event
+     */
+    @Override
+    public List<EventDTO> toDto(List<Event> entityList) {
+        if (entityList == null) {
+            return null;
+        }
+        
+        Set<String> userIds = entityList.stream()
+                .filter(Objects::nonNull)
+                .map(Event::getKeycloakId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        
+        Map<String, UserRepresentation> users = Collections.emptyMap();
+        if (!userIds.isEmpty()) {
+            try {
+                users = keycloakService.getUsersByIds(userIds);
+            } catch (Exception e) {
+                log.warn("Could not fetch usernames for {} Keycloak IDs: {}", userIds.size(), e.getMessage());
+            }
+        }
+        
+        List<EventDTO> dtos = new ArrayList<>(entityList.size());
+        for (Event entity : entityList) {
+            EventDTO dto = toDtoWithoutUser(entity);
+            if (dto != null) {
+                UserRepresentation user = users.get(entity.getKeycloakId());
+                if (user != null) {
+                    dto.setUserName(user.getUsername());
+                }
+            }
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+    
+    private EventDTO toDtoWithoutUser(Event entity) {
         if (entity == null) {
             return null;
         }
@@ -99,18 +162,6 @@ public class EventMapper implements EntityMapper<EventDTO, Event> {
         // Set custom parameters
         dto.setCustomParameters(entity.getCustomParameters());
         
-        // Try to get username from Keycloak
-        try {
-            UserRepresentation user = keycloakService.getUserById(entity.getKeycloakId())
-                .orElse(null);
-                
-            if (user != null) {
-                dto.setUserName(user.getUsername());
-            }
-        } catch (Exception e) {
-            log.warn("Could not fetch username for Keycloak ID: {}", entity.getKeycloakId());
-        }
-        
         return dto;
     }
 }
\ No newline at end of file
@@ -7,8 +7,7 @@ import lombok.RequiredArgsConstructor;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -29,12 +28,7 @@ public class UserMapper {
             return null;
         }
         
-        UserDTO dto = new UserDTO();
-        dto.setId(userRepresentation.getId());
-        dto.setUsername(userRepresentation.getUsername());
-        dto.setFirstName(userRepresentation.getFirstName());
-        dto.setLastName(userRepresentation.getLastName());
-        dto.setEmail(userRepresentation.getEmail());
+        UserDTO dto = toDtoWithoutDetails(userRepresentation);
         
         // Get roles
         List<String> roles = keycloakService.getUserRoles(userRepresentation.getId());
@@ -52,15 +46,61 @@ public class UserMapper {
     }
     
     /**
-     * Convert a list of UserRepresentations to a list of UserDTOs
+     * Convert a list of UserRepresentations to a list of UserDTOs.
+     * Roles and SSH keys are loaded for the whole list at once and avatars are read from the
+     * attributes already in the representations, so the number of round trips does not grow
+     * with the number of users.
      */
     public List<UserDTO> toDto(List<UserRepresentation> userRepresentations) {
         if (userRepresentations == null) {
             return null;
         }
         
-        return userRepresentations.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        Set<String> userIds = userRepresentations.stream()
+                .filter(Objects::nonNull)
+                .map(UserRepresentation::getId)
+                .collect(Collectors.toSet());
+        Map<String, List<String>> rolesByUser = userIds.isEmpty()
+                ? Collections.emptyMap()
+                : keycloakService.getUserRolesByIds(userIds);
+        Map<String, String> sshKeysByUser = userIds.isEmpty()
+                ? Collections.emptyMap()
+                : sshKeyService.getUserSshKeys(userIds);
+        
+        List<UserDTO> dtos = new ArrayList<>(userRepresentations.size());
+        for (UserRepresentation userRepresentation : userRepresentations) {
+            if (userRepresentation == null) {
+                dtos.add(null);
+                continue;
+            }
+            UserDTO dto = toDtoWithoutDetails(userRepresentation);
+            dto.setRoles(new HashSet<>(rolesByUser.getOrDefault(userRepresentation.getId(), List.of())));
+            avatarOf(userRepresentation).ifPresent(dto::setAvatar);
+            dto.setSshPublicKey(sshKeysByUser.get(userRepresentation.getId()));
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+    
+    private UserDTO toDtoWithoutDetails(UserRepresentation userRepresentation) {
+        UserDTO dto = new UserDTO();
+        dto.setId(userRepresentation.getId());
+        dto.setUsername(userRepresentation.getUsername());
+        dto.setFirstName(userRepresentation.getFirstName());
+        dto.setLastName(userRepresentation.getLastName());
+        dto.setEmail(userRepresentation.getEmail());
+        return dto;
+    }
+    
+    /**
+     * Reads the avatar from the attributes of the representation (Keycloak omits them for users without any)
+     */
+    private Optional<String> avatarOf(UserRepresentation userRepresentation) {
+        Map<String, List<String>> attributes = userRepresentation.getAttributes();
+        if (attributes == null) {
+            return Optional.empty();
+        }
+        List<String> values = attributes.get(KeycloakService.ATTR_AVATAR);
+        return values == null || values.isEmpty() ? Optional.empty() : Optional.ofNullable(values.get(0));
     }
-}
\ No newline at end of file
+}
@@ -18,7 +18,7 @@ import it.polito.cloudresources.be.config.datetime.DateTimeConfig;
  * Added 'startNotifiedAt' and 'endNotifiedAt' fields to track processing status for start/end events.
  */
 @Entity
-@Table(name = "events")
+@Table(name = "events") // Indexes are created by the migrations in db/migration
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,45 @@
+package it.polito.cloudresources.be.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Closure table of the resource hierarchy: one row for every resource and each of its ancestors,
+ * the resource itself included at depth 0. The ancestors or descendants of a resource are found
+ * with a single indexed lookup instead of walking the parent links.
+ */
+@Entity
+@Table(name = "resource_closure") // Indexes are created by the migrations in db/migration
+@IdClass(ResourceClosure.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceClosure {
+
+    @Id
+    @Column(name = "ancestor_id")
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id")
+    private Long descendantId;
+
+    @Column(nullable = false)
+    private int depth;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long ancestorId;
+        private Long descendantId;
+    }
+}
@@ -2,13 +2,20 @@ package it.polito.cloudresources.be.repository;
 
 import it.polito.cloudresources.be.model.Event;
 import it.polito.cloudresources.be.model.Resource;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository for Event entity operations
@@ -16,6 +23,22 @@ import java.util.List;
  */
 @Repository
 public interface EventRepository extends JpaRepository<Event, Long> {
+
+    int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    /**
+     * Events of the accessible sites (all of them when allSites is true), optionally restricted to a
+     * resource and to the events overlapping a date range, after the (afterStart, afterId) keyset
+     * cursor, in (start, id) order
+     */
+    String FILTERED_EVENTS = "FROM Event e JOIN FETCH e.resource r " +
+            "WHERE (:allSites = true OR r.siteId IN :siteIds) " +
+            "AND (:resourceId IS NULL OR r.id = :resourceId) " +
+            "AND (:startDate IS NULL OR e.end > :startDate) " +
+            "AND (:endDate IS NULL OR e.start < :endDate) " +
+            "AND (:afterStart IS NULL OR e.start > :afterStart OR (e.start = :afterStart AND e.id > :afterId)) " +
+            "ORDER BY e.start, e.id";
+
     /**
      * Find events by user's Keycloak ID
      */
@@ -36,28 +59,102 @@ public interface EventRepository extends JpaRepository<Event, Long> {
      */
     List<Event> findByResourceId(Long resourceId);
     /**
-     * Find events within a date range
-     * Only checks if the event start date is within the range to include long-running events
+     * Find events overlapping a date range, including the ones started before it
      */
-    @Query("SELECT e FROM Event e WHERE e.start >= :startDate AND e.start <= :endDate")
+    @Query("SELECT e FROM Event e WHERE e.start < :endDate AND e.end > :startDate")
     List<Event> findByDateRange(
             @Param("startDate") ZonedDateTime startDate,
             @Param("endDate") ZonedDateTime endDate);
 
     /**
-     * Find conflicting events for a resource in a time period
+     * Find events of the given sites overlapping a date range
      */
-    @Query("SELECT e FROM Event e WHERE e.resource.id = :resourceId " +
-            "AND ((e.start <= :end AND e.end >= :start) OR " +
-            "(e.start >= :start AND e.start <= :end) OR " +
-            "(e.end >= :start AND e.end <= :end)) " +
+    @Query("SELECT e FROM Event e JOIN e.resource r " +
+            "WHERE r.siteId IN :siteIds AND e.start < :endDate AND e.end > :startDate")
+    List<Event> findByDateRangeAndSiteIds(
+            @Param("startDate") ZonedDateTime startDate,
+            @Param("endDate") ZonedDateTime endDate,
+            @Param("siteIds") Collection<String> siteIds);
+
+    /**
+     * Tells whether a resource, any of its ancestors or any of its descendants has an event overlapping
+     * the time period. Periods are half-open, so back-to-back bookings do not conflict.
+     * The hierarchy is read from the resource closure table; the resource itself is matched directly,
+     * so that its own bookings conflict even before it is linked there.
+     */
+    @Query("SELECT CASE WHEN COUNT(e) > 0 THEN true ELSE false END FROM Event e " +
+            "WHERE (e.resource.id = :resourceId " +
+            "OR e.resource.id IN (SELECT c.ancestorId FROM ResourceClosure c WHERE c.descendantId = :resourceId) " +
+            "OR e.resource.id IN (SELECT c.descendantId FROM ResourceClosure c WHERE c.ancestorId = :resourceId)) " +
+            "AND e.start < :end AND e.end > :start " +
             "AND (e.id != :eventId OR :eventId IS NULL)")
-    List<Event> findConflictingEvents(
+    boolean existsConflictInHierarchy(
             @Param("resourceId") Long resourceId,
             @Param("start") ZonedDateTime start,
             @Param("end") ZonedDateTime end,
             @Param("eventId") Long eventId);
 
+    /**
+     * Find the bookings not over at the given time, as (event ID, resource ID, start, end) rows
+     */
+    @Query("SELECT e.id, e.resource.id, e.start, e.end FROM Event e WHERE e.end > :from")
+    List<Object[]> findBookingsEndingAfter(@Param("from") ZonedDateTime from);
+
+    /**
+     * Find the bookings of the given resources overlapping the time period,
+     * as (event ID, resource ID, start, end) rows
+     */
+    @Query("SELECT e.id, e.resource.id, e.start, e.end FROM Event e " +
+            "WHERE e.resource.id IN :resourceIds AND e.start < :end AND e.end > :start")
+    List<Object[]> findBookingsOverlapping(
+            @Param("resourceIds") Collection<Long> resourceIds,
+            @Param("start") ZonedDateTime start,
+            @Param("end") ZonedDateTime end);
+
+    /**
+     * Same as {@link #findBookingsOverlapping}, for any number of resources: the IDs are bound in chunks,
+     * as some databases limit the size of an IN list
+     */
+    default List<Object[]> findBookingsOverlappingInChunks(Collection<Long> resourceIds, ZonedDateTime start,
+                                                           ZonedDateTime end) {
+        List<Long> ids = new ArrayList<>(resourceIds);
+        List<Object[]> rows = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            rows.addAll(findBookingsOverlapping(ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size())),
+                    start, end));
+        }
+        return rows;
+    }
+
+    /**
+     * Find a page of events, see {@link #FILTERED_EVENTS}; the page size is taken from the pageable
+     */
+    @Query("SELECT e " + FILTERED_EVENTS)
+    List<Event> findEventPage(
+            @Param("allSites") boolean allSites,
+            @Param("siteIds") Collection<String> siteIds,
+            @Param("resourceId") Long resourceId,
+            @Param("startDate") ZonedDateTime startDate,
+            @Param("endDate") ZonedDateTime endDate,
+            @Param("afterStart") ZonedDateTime afterStart,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    /**
+     * Stream the events, see {@link #FILTERED_EVENTS}, fetching them from the database in chunks.
+     * The stream must be consumed within a transaction and closed.
+     */
+    @Query("SELECT e " + FILTERED_EVENTS)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Event> streamEvents(
+            @Param("allSites") boolean allSites,
+            @Param("siteIds") Collection<String> siteIds,
+            @Param("resourceId") Long resourceId,
+            @Param("startDate") ZonedDateTime startDate,
+            @Param("endDate") ZonedDateTime endDate,
+            @Param("afterStart") ZonedDateTime afterStart,
+            @Param("afterId") Long afterId);
+
     /**
      *
      * @param siteIds
@@ -0,0 +1,87 @@
+package it.polito.cloudresources.be.repository;
+
+import it.polito.cloudresources.be.model.ResourceClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for the resource closure table
+ */
+@Repository
+public interface ResourceClosureRepository extends JpaRepository<ResourceClosure, ResourceClosure.Key> {
+
+    /**
+     * Find the IDs of a resource, its ancestors and its descendants
+     */
+    @Query("SELECT DISTINCT CASE WHEN c.descendantId = :resourceId THEN c.ancestorId ELSE c.descendantId END " +
+            "FROM ResourceClosure c WHERE c.descendantId = :resourceId OR c.ancestorId = :resourceId")
+    List<Long> findRelatedResourceIds(@Param("resourceId") Long resourceId);
+
+    /**
+     * Find all the links from or to the given resources, to get their ancestors and descendants at once
+     */
+    @Query("SELECT c FROM ResourceClosure c WHERE c.ancestorId IN :resourceIds OR c.descendantId IN :resourceIds")
+    List<ResourceClosure> findLinksOf(@Param("resourceIds") Collection<Long> resourceIds);
+
+    /**
+     * Find the link of a resource to the root of its hierarchy, i.e. its deepest link
+     */
+    Optional<ResourceClosure> findFirstByDescendantIdOrderByDepthDesc(Long descendantId);
+
+    /**
+     * Tells whether a resource is in the subtree of another one, itself included
+     */
+    boolean existsByAncestorIdAndDescendantId(Long ancestorId, Long descendantId);
+
+    /**
+     * Find the parent links, i.e. the rows at depth 1, as (ancestor ID, descendant ID) rows
+     */
+    @Query("SELECT c.ancestorId, c.descendantId FROM ResourceClosure c WHERE c.depth = 1")
+    List<Object[]> findParentLinks();
+
+    /**
+     * Find the IDs of the resources present in the table
+     */
+    @Query("SELECT c.descendantId FROM ResourceClosure c WHERE c.depth = 0")
+    List<Long> findResourceIds();
+
+    /**
+     * Link a new resource, already linked to itself, to the ancestors of its parent and the parent itself
+     */
+    @Modifying
+    @Query("INSERT INTO ResourceClosure (ancestorId, descendantId, depth) " +
+            "SELECT c.ancestorId, :resourceId, c.depth + 1 FROM ResourceClosure c WHERE c.descendantId = :parentId")
+    void linkToParent(@Param("resourceId") Long resourceId, @Param("parentId") Long parentId);
+
+    /**
+     * Unlink a subtree from the ancestors of its root, keeping the links within the subtree
+     */
+    @Modifying
+    @Query("DELETE FROM ResourceClosure c " +
+            "WHERE c.descendantId IN (SELECT s.descendantId FROM ResourceClosure s WHERE s.ancestorId = :resourceId) " +
+            "AND c.ancestorId NOT IN (SELECT s.descendantId FROM ResourceClosure s WHERE s.ancestorId = :resourceId)")
+    void detachSubtree(@Param("resourceId") Long resourceId);
+
+    /**
+     * Link every resource of a subtree to a new parent of its root and all the ancestors of that parent
+     */
+    @Modifying
+    @Query("INSERT INTO ResourceClosure (ancestorId, descendantId, depth) " +
+            "SELECT a.ancestorId, s.descendantId, a.depth + s.depth + 1 " +
+            "FROM ResourceClosure a, ResourceClosure s WHERE a.descendantId = :parentId AND s.ancestorId = :resourceId")
+    void attachSubtree(@Param("resourceId") Long resourceId, @Param("parentId") Long parentId);
+
+    /**
+     * Remove every link to and from a resource
+     */
+    @Modifying
+    @Query("DELETE FROM ResourceClosure c WHERE c.ancestorId = :resourceId OR c.descendantId = :resourceId")
+    void deleteLinks(@Param("resourceId") Long resourceId);
+}
@@ -3,10 +3,17 @@ package it.polito.cloudresources.be.repository;
 import it.polito.cloudresources.be.model.Resource;
 import it.polito.cloudresources.be.model.ResourceStatus;
 import it.polito.cloudresources.be.model.ResourceType;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for Resource entity operations
@@ -41,6 +48,27 @@ public interface ResourceRepository extends JpaRepository<Resource, Long> {
 
     List<Resource> findByParentId(Long parentId);
 
+    /**
+     * Find the whole hierarchy as (resource ID, parent ID) rows, the parent ID being null for the roots
+     */
+    @Query("SELECT r.id, p.id FROM Resource r LEFT JOIN r.parent p")
+    List<Object[]> findAllParentLinks();
+
+    /**
+     * Lock the row of a resource until the end of the transaction (SELECT ... FOR UPDATE),
+     * waiting at most 10 seconds for it
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "10000"))
+    @Query("SELECT r FROM Resource r WHERE r.id = :id")
+    Optional<Resource> lockById(@Param("id") Long id);
+
+    /**
+     * The lowest resource ID, if any resource exists
+     */
+    @Query("SELECT MIN(r.id) FROM Resource r")
+    Optional<Long> findMinId();
+
     List<Resource> findBySiteId(String siteId);
     
     List<Resource> findBySiteIdIn(List<String> siteIds);
@@ -4,6 +4,8 @@ import it.polito.cloudresources.be.model.SshKey;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -20,6 +22,14 @@ public interface SshKeyRepository extends JpaRepository<SshKey, Long> {
      */
     Optional<SshKey> findByUserId(String userId);
     
+    /**
+     * Find the SSH keys of several users
+     * 
+     * @param userIds The Keycloak user IDs
+     * @return The SSH keys found, at most one per user
+     */
+    List<SshKey> findByUserIdIn(Collection<String> userIds);
+    
     /**
      * Delete SSH key by user ID
      * 
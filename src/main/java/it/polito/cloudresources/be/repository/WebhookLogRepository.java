@@ -4,9 +4,11 @@ import it.polito.cloudresources.be.model.WebhookLog;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -54,6 +56,28 @@ public interface WebhookLogRepository extends JpaRepository<WebhookLog, Long> {
            "l.nextRetryAt <= :now AND l.retryCount < l.webhook.maxRetries")
     List<WebhookLog> findPendingRetries(@Param("now") ZonedDateTime now);
     
+    /**
+     * Claim a due retry, so that a single instance sends it: the retry count is bumped only if it is
+     * still the one that was read
+     * 
+     * @return 1 if the retry was claimed, 0 if another instance took it
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE WebhookLog l SET l.retryCount = l.retryCount + 1, l.nextRetryAt = NULL " +
+           "WHERE l.id = :id AND l.retryCount = :retryCount AND l.success = false")
+    int claimRetry(@Param("id") Long id, @Param("retryCount") int retryCount);
+    
+    /**
+     * Give up the retries that were due before the given time
+     * 
+     * @return the number of retries given up
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE WebhookLog l SET l.nextRetryAt = NULL WHERE l.success = false AND l.nextRetryAt < :before")
+    int cancelRetriesDueBefore(@Param("before") ZonedDateTime before);
+    
     /**
      * Find logs for a specific resource
      */
@@ -0,0 +1,71 @@
+package it.polito.cloudresources.be.service;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the authorization data of a user (global admin flag, member sites
+ * and administered sites), computed once per request by {@link AccessContextService}
+ */
+@Getter
+public final class AccessContext {
+
+    private final String userId;
+    private final boolean globalAdmin;
+    private final boolean siteAdminRole;
+    private final Set<String> memberSiteIds;
+    private final Set<String> adminSiteIds;
+    private final Set<String> adminSiteNames;
+
+    public AccessContext(String userId,
+                         boolean globalAdmin,
+                         boolean siteAdminRole,
+                         Set<String> memberSiteIds,
+                         Set<String> adminSiteIds,
+                         Set<String> adminSiteNames) {
+        this.userId = userId;
+        this.globalAdmin = globalAdmin;
+        this.siteAdminRole = siteAdminRole;
+        this.memberSiteIds = Collections.unmodifiableSet(new LinkedHashSet<>(memberSiteIds));
+        this.adminSiteIds = Collections.unmodifiableSet(new LinkedHashSet<>(adminSiteIds));
+        this.adminSiteNames = Collections.unmodifiableSet(new LinkedHashSet<>(adminSiteNames));
+    }
+
+    /**
+     * Context for requests without an identified user: no privileges at all
+     */
+    public static AccessContext anonymous() {
+        return new AccessContext(null, false, false, Set.of(), Set.of(), Set.of());
+    }
+
+    /**
+     * Check if the user is a member of the site
+     */
+    public boolean isMemberOf(String siteId) {
+        return memberSiteIds.contains(siteId);
+    }
+
+    /**
+     * Check if the user can read the content of a site (global admin or site member)
+     */
+    public boolean canAccessSite(String siteId) {
+        return globalAdmin || memberSiteIds.contains(siteId);
+    }
+
+    /**
+     * Check if the user can administer a site (global admin or site admin)
+     */
+    public boolean isSiteAdmin(String siteId) {
+        return globalAdmin || adminSiteIds.contains(siteId);
+    }
+
+    /**
+     * Check if the user is global admin or admin of at least one site
+     */
+    public boolean isAnyAdmin() {
+        return globalAdmin || siteAdminRole || !adminSiteIds.isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.util.JwtUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the {@link AccessContext} of a user and keeps it for the rest of the HTTP request,
+ * so that authorization checks do not hit Keycloak more than once per request.
+ * Outside of a request (async tasks, schedulers) the context is computed on every call.
+ * <p>
+ * When token claims are enabled, the context of the authenticated caller is derived from the
+ * realm roles and the group membership claim of the validated JWT; the Keycloak admin API is
+ * only used for other users.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AccessContextService {
+
+    private static final String ATTRIBUTE_PREFIX = AccessContextService.class.getName() + ".";
+    private static final String SITE_ADMIN_ROLE_SUFFIX = "_site_admin";
+
+    private final KeycloakService keycloakService;
+    private final JwtUtils jwtUtils;
+
+    @Value("${keycloak.authorization.token-claims.enabled:false}")
+    private boolean tokenClaimsEnabled;
+
+    @Value("${keycloak.authorization.token-claims.groups-claim:groups}")
+    private String groupsClaim;
+
+    /**
+     * Get the access context of a user, computing it at most once per request
+     */
+    public AccessContext getAccessContext(String userId) {
+        if (userId == null) {
+            return AccessContext.anonymous();
+        }
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return buildAccessContext(userId);
+        }
+
+        String attributeName = ATTRIBUTE_PREFIX + userId;
+        Object cached = attributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST);
+        if (cached instanceof AccessContext accessContext) {
+            return accessContext;
+        }
+
+        AccessContext accessContext = buildAccessContext(userId);
+        attributes.setAttribute(attributeName, accessContext, RequestAttributes.SCOPE_REQUEST);
+        return accessContext;
+    }
+
+    /**
+     * Drop the context of a user from the current request, e.g. after changing its memberships
+     */
+    public void invalidate(String userId) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && userId != null) {
+            attributes.removeAttribute(ATTRIBUTE_PREFIX + userId, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private AccessContext buildAccessContext(String userId) {
+        Jwt jwt = tokenClaimsEnabled ? getCallerJwt(userId) : null;
+        if (jwt != null) {
+            return buildAccessContextFromToken(userId, jwt);
+        }
+
+        boolean globalAdmin = keycloakService.hasGlobalAdminRole(userId);
+        List<String> roles = keycloakService.getUserRoles(userId);
+        List<GroupRepresentation> groups = keycloakService.getUserGroups(userId);
+        return buildAccessContext(userId, globalAdmin, roles, groups);
+    }
+
+    /**
+     * Build the context of the caller from its token, resolving group names to sites
+     * through the (cached) list of realm groups
+     */
+    private AccessContext buildAccessContextFromToken(String userId, Jwt jwt) {
+        List<String> roles = jwtUtils.extractRoles(jwt);
+        List<String> groupNames = jwtUtils.extractGroups(jwt, groupsClaim);
+
+        Map<String, GroupRepresentation> groupsByName = keycloakService.getAllGroups().stream()
+                .collect(Collectors.toMap(GroupRepresentation::getName, Function.identity(), (first, second) -> first));
+        List<GroupRepresentation> groups = groupNames.stream()
+                .map(groupsByName::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        log.debug("Access context for user {} derived from token claims", userId);
+        return buildAccessContext(userId, roles.contains(KeycloakService.ROLE_GLOBAL_ADMIN), roles, groups);
+    }
+
+    private AccessContext buildAccessContext(String userId, boolean globalAdmin,
+                                             List<String> roles, List<GroupRepresentation> groups) {
+        Set<String> memberSiteIds = new LinkedHashSet<>();
+        Set<String> adminSiteIds = new LinkedHashSet<>();
+        Set<String> adminSiteNames = new LinkedHashSet<>();
+
+        for (GroupRepresentation group : groups) {
+            memberSiteIds.add(group.getId());
+            if (roles.contains(keycloakService.getSiteAdminRoleName(group.getName()))) {
+                adminSiteIds.add(group.getId());
+                adminSiteNames.add(group.getName());
+            }
+        }
+
+        boolean siteAdminRole = roles.stream().anyMatch(role -> role.endsWith(SITE_ADMIN_ROLE_SUFFIX));
+
+        log.debug("Access context for user {}: globalAdmin={}, sites={}, adminSites={}",
+                userId, globalAdmin, memberSiteIds, adminSiteIds);
+        return new AccessContext(userId, globalAdmin, siteAdminRole, memberSiteIds, adminSiteIds, adminSiteNames);
+    }
+
+    /**
+     * Get the validated JWT of the current caller, if the caller is the given user
+     * and the token carries the group membership claim
+     */
+    private Jwt getCallerJwt(String userId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof JwtAuthenticationToken jwtAuthentication) {
+            Jwt jwt = jwtAuthentication.getToken();
+            if (userId.equals(jwtUtils.extractUserId(jwt)) && jwt.hasClaim(groupsClaim)) {
+                return jwt;
+            }
+        }
+        return null;
+    }
+}
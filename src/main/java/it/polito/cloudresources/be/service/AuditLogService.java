@@ -34,7 +34,7 @@ public class AuditLogService {
 
     private final AuditLogRepository auditLogRepository;
     private final DateTimeConfig.DateTimeService dateTimeService;
-    private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final AuditLogMapper auditLogMapper;
     private final AuthenticationUtils authenticationUtils;
 
@@ -154,8 +154,7 @@ public class AuditLogService {
             int size) {
         
         // Check authorization - only global admins and site admins can access logs
-        if (!keycloakService.hasGlobalAdminRole(userId) && 
-            keycloakService.getUserAdminGroups(userId).isEmpty()) {
+        if (!accessContextService.getAccessContext(userId).isAnyAdmin()) {
             throw new AccessDeniedException("Only administrators can access audit logs");
         }
         
@@ -253,8 +252,8 @@ public class AuditLogService {
      */
     public AuditLogDTO getLogById(Long id, String userId) {
         // Check authorization - only global admins and site admins can access logs
-        if (!keycloakService.hasGlobalAdminRole(userId) && 
-            keycloakService.getUserAdminGroups(userId).isEmpty()) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        if (!access.isAnyAdmin()) {
             throw new AccessDeniedException("Only administrators can access audit logs");
         }
         
@@ -268,9 +267,8 @@ public class AuditLogService {
         AuditLogDTO log = logOpt.get();
 
         // For site admins, check if log belongs to their site
-        if (!keycloakService.hasGlobalAdminRole(userId)) {
-            List<String> adminSites = keycloakService.getUserAdminGroups(userId);
-            if (!adminSites.contains(log.getSiteName())) {
+        if (!access.isGlobalAdmin()) {
+            if (!access.getAdminSiteNames().contains(log.getSiteName())) {
                 throw new AccessDeniedException("Not authorized to access this log");
             }
         }
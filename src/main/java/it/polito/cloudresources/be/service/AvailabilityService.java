@@ -0,0 +1,277 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.dto.AvailableSlotDTO;
+import it.polito.cloudresources.be.dto.FreeBusyDTO;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.model.ResourceStatus;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import it.polito.cloudresources.be.util.DateTimeUtils;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Finds free periods of resources. The bookings of each candidate resource and of its whole hierarchy
+ * are swept in start order, and the gaps between them long enough for the requested duration are the
+ * free slots. The same bookings give the free/busy calendar of a site, one bit per fixed-length slot.
+ * Bookings are read from the booking index when it covers the search window, unless disabled with
+ * app.availability.use-booking-index, from the database otherwise. The index sees the bookings of other
+ * instances only from its next load; slots are a hint, the booking itself is still checked for conflicts.
+ */
+@Service
+public class AvailabilityService {
+
+    private static final int MAX_SLOTS = 100;
+    private static final int MAX_FREE_BUSY_SLOTS = 5000;
+    private static final Set<Integer> ALLOWED_SLOT_MINUTES = Set.of(15, 30, 60);
+
+    private final ResourceRepository resourceRepository;
+    private final EventRepository eventRepository;
+    private final AccessContextService accessContextService;
+    private final ResourceHierarchyService resourceHierarchyService;
+    private final BookingIndex bookingIndex;
+    private final DateTimeUtils dateTimeUtils;
+    private final boolean useBookingIndex;
+
+    public AvailabilityService(ResourceRepository resourceRepository,
+                               EventRepository eventRepository,
+                               AccessContextService accessContextService,
+                               ResourceHierarchyService resourceHierarchyService,
+                               BookingIndex bookingIndex,
+                               DateTimeUtils dateTimeUtils,
+                               @Value("${app.availability.use-booking-index:true}") boolean useBookingIndex) {
+        this.resourceRepository = resourceRepository;
+        this.eventRepository = eventRepository;
+        this.accessContextService = accessContextService;
+        this.resourceHierarchyService = resourceHierarchyService;
+        this.bookingIndex = bookingIndex;
+        this.dateTimeUtils = dateTimeUtils;
+        this.useBookingIndex = useBookingIndex;
+    }
+
+    /**
+     * Find the earliest free slots of the given duration among the candidate resources
+     *
+     * @param resourceIds the candidate resources, or null to search by type
+     * @param resourceTypeId the type of the candidate resources, used when no resource is given
+     * @param duration the length of the slots
+     * @param from the start of the search window
+     * @param to the end of the search window
+     * @param count how many slots to return at most
+     * @return the slots, earliest first; a free period longer than the duration gives back-to-back slots
+     */
+    @Transactional(readOnly = true)
+    public List<AvailableSlotDTO> searchAvailability(List<Long> resourceIds, Long resourceTypeId, Duration duration,
+                                                     ZonedDateTime from, ZonedDateTime to, int count, String userId) {
+        ZonedDateTime windowStart = dateTimeUtils.ensureTimeZone(from);
+        ZonedDateTime windowEnd = dateTimeUtils.ensureTimeZone(to);
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("The duration must be positive");
+        }
+        if (!windowEnd.isAfter(windowStart)) {
+            throw new IllegalArgumentException("The end of the search window must be after its start");
+        }
+        if (count < 1 || count > MAX_SLOTS) {
+            throw new IllegalArgumentException("The number of slots must be between 1 and " + MAX_SLOTS);
+        }
+
+        List<Resource> candidates = findCandidates(resourceIds, resourceTypeId, userId);
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Set<Long>> relatedResourceIds = resourceHierarchyService.getRelatedResourceIds(
+                candidates.stream().map(Resource::getId).collect(Collectors.toSet()));
+        Set<Long> allResourceIds = relatedResourceIds.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+        Map<Long, List<BookingIndex.Booking>> bookings = findBookings(allResourceIds, windowStart, windowEnd);
+
+        long start = windowStart.toInstant().toEpochMilli();
+        long end = windowEnd.toInstant().toEpochMilli();
+        long length = duration.toMillis();
+
+        List<AvailableSlotDTO> slots = new ArrayList<>();
+        for (Resource candidate : candidates) {
+            List<BookingIndex.Booking> busy = relatedResourceIds.getOrDefault(candidate.getId(), Set.of(candidate.getId()))
+                    .stream()
+                    .flatMap(id -> bookings.getOrDefault(id, List.of()).stream())
+                    .sorted(Comparator.comparingLong(BookingIndex.Booking::start))
+                    .collect(Collectors.toList());
+            for (long slotStart : findFreeSlots(busy, start, end, length, count)) {
+                slots.add(new AvailableSlotDTO(candidate.getId(), candidate.getName(),
+                        toDateTime(slotStart), toDateTime(slotStart + length)));
+            }
+        }
+
+        return slots.stream()
+                .sorted(Comparator.comparing(AvailableSlotDTO::getStart).thenComparing(AvailableSlotDTO::getResourceId))
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Build the free/busy calendar of the resources of a site. A slot is busy when it overlaps a booking
+     * of the resource, of one of its ancestors or of one of its descendants, i.e. when the resource cannot
+     * be booked for the whole slot. Busy slots are marked straight from the bookings, with no entity loaded
+     * besides the resources; the bookings come from the booking index when it covers the window, so that
+     * no query runs over the bookings of the site.
+     *
+     * @param slotMinutes the length of the slots, one of 15, 30 or 60
+     */
+    @Transactional(readOnly = true)
+    public FreeBusyDTO getFreeBusy(String siteId, ZonedDateTime from, ZonedDateTime to, int slotMinutes,
+                                   FreeBusyDTO.Encoding encoding, String userId) {
+        if (!accessContextService.getAccessContext(userId).canAccessSite(siteId)) {
+            throw new AccessDeniedException("User does not have access to this site");
+        }
+        if (!ALLOWED_SLOT_MINUTES.contains(slotMinutes)) {
+            throw new IllegalArgumentException("The slot length must be one of " + ALLOWED_SLOT_MINUTES + " minutes");
+        }
+        ZonedDateTime windowStart = dateTimeUtils.ensureTimeZone(from);
+        ZonedDateTime windowEnd = dateTimeUtils.ensureTimeZone(to);
+        long start = windowStart.toInstant().toEpochMilli();
+        long slotLength = Duration.ofMinutes(slotMinutes).toMillis();
+        long windowLength = windowEnd.toInstant().toEpochMilli() - start;
+        if (windowLength <= 0) {
+            throw new IllegalArgumentException("The end of the window must be after its start");
+        }
+        if (windowLength > MAX_FREE_BUSY_SLOTS * slotLength) {
+            throw new IllegalArgumentException("The window can span at most " + MAX_FREE_BUSY_SLOTS + " slots");
+        }
+        int slotCount = (int) ((windowLength + slotLength - 1) / slotLength);
+
+        List<Resource> resources = resourceRepository.findBySiteId(siteId);
+        Map<Long, Set<Long>> relatedResourceIds = resources.isEmpty() ? Map.of() : resourceHierarchyService.getRelatedResourceIds(
+                resources.stream().map(Resource::getId).collect(Collectors.toSet()));
+        Map<Long, List<BookingIndex.Booking>> bookings = findBookings(
+                relatedResourceIds.values().stream().flatMap(Set::stream).collect(Collectors.toSet()),
+                windowStart, windowStart.plus(Duration.ofMillis(slotCount * slotLength)));
+
+        List<FreeBusyDTO.ResourceFreeBusy> calendars = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            BitSet busy = new BitSet(slotCount);
+            for (Long id : relatedResourceIds.getOrDefault(resource.getId(), Set.of(resource.getId()))) {
+                for (BookingIndex.Booking booking : bookings.getOrDefault(id, List.of())) {
+                    // Slots are half-open: a booking ending exactly at the start of a slot leaves it free
+                    int first = (int) Math.max(0, Math.floorDiv(booking.start() - start, slotLength));
+                    int last = (int) Math.min(slotCount, Math.ceilDiv(booking.end() - start, slotLength));
+                    if (first < last) {
+                        busy.set(first, last);
+                    }
+                }
+            }
+            calendars.add(encoding == FreeBusyDTO.Encoding.RLE
+                    ? new FreeBusyDTO.ResourceFreeBusy(resource.getId(), resource.getName(), null, toRuns(busy, slotCount))
+                    : new FreeBusyDTO.ResourceFreeBusy(resource.getId(), resource.getName(),
+                            Base64.getEncoder().encodeToString(busy.toByteArray()), null));
+        }
+
+        return FreeBusyDTO.builder()
+                .from(windowStart)
+                .to(windowEnd)
+                .slotMinutes(slotMinutes)
+                .slotCount(slotCount)
+                .encoding(encoding)
+                .resources(calendars)
+                .build();
+    }
+
+    /**
+     * Run-length encodes the slots, alternating free and busy runs and starting with a free one
+     */
+    private static List<Integer> toRuns(BitSet busy, int slotCount) {
+        List<Integer> runs = new ArrayList<>();
+        int position = 0;
+        boolean busyRun = false;
+        while (position < slotCount) {
+            int next = busyRun ? busy.nextClearBit(position) : busy.nextSetBit(position);
+            int runEnd = next < 0 ? slotCount : Math.min(next, slotCount);
+            runs.add(runEnd - position);
+            position = runEnd;
+            busyRun = !busyRun;
+        }
+        return runs;
+    }
+
+    /**
+     * Sweeps the bookings, sorted by start, keeping the end of the busy time seen so far: the time up to
+     * the start of the next booking is free, and split into as many slots as fit in it
+     *
+     * @return the start of the first {@code limit} slots
+     */
+    private static List<Long> findFreeSlots(List<BookingIndex.Booking> busy, long windowStart, long windowEnd,
+                                            long length, int limit) {
+        List<Long> slots = new ArrayList<>();
+        long freeFrom = windowStart;
+        for (BookingIndex.Booking booking : busy) {
+            if (slots.size() == limit) {
+                return slots;
+            }
+            addSlots(slots, freeFrom, Math.min(booking.start(), windowEnd), length, limit);
+            freeFrom = Math.max(freeFrom, booking.end());
+        }
+        addSlots(slots, freeFrom, windowEnd, length, limit);
+        return slots;
+    }
+
+    /**
+     * Adds the back-to-back slots of a free period, until the limit is reached
+     */
+    private static void addSlots(List<Long> slots, long freeFrom, long freeTo, long length, int limit) {
+        for (long slotStart = freeFrom; freeTo - slotStart >= length && slots.size() < limit; slotStart += length) {
+            slots.add(slotStart);
+        }
+    }
+
+    /**
+     * The active resources among the requested ones, or of the requested type, that the user can book
+     */
+    private List<Resource> findCandidates(List<Long> resourceIds, Long resourceTypeId, String userId) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        List<Resource> resources;
+        if (resourceIds != null && !resourceIds.isEmpty()) {
+            resources = resourceRepository.findAllById(resourceIds);
+            if (resources.size() < new HashSet<>(resourceIds).size()) {
+                throw new EntityNotFoundException("Resource not found");
+            }
+            if (!resources.stream().allMatch(resource -> access.canAccessSite(resource.getSiteId()))) {
+                throw new AccessDeniedException("You don't have access to all the requested resources");
+            }
+        } else if (resourceTypeId != null) {
+            resources = access.isGlobalAdmin()
+                    ? resourceRepository.findByTypeId(resourceTypeId)
+                    : resourceRepository.findBySiteIdInAndTypeId(new ArrayList<>(access.getMemberSiteIds()), resourceTypeId);
+        } else {
+            throw new IllegalArgumentException("Either resources or a resource type must be given");
+        }
+        return resources.stream()
+                .filter(resource -> resource.getStatus() == ResourceStatus.ACTIVE)
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, List<BookingIndex.Booking>> findBookings(Collection<Long> resourceIds, ZonedDateTime from, ZonedDateTime to) {
+        if (useBookingIndex && bookingIndex.covers(from)) {
+            return bookingIndex.findBookings(resourceIds, from, to);
+        }
+        Map<Long, List<BookingIndex.Booking>> bookings = new HashMap<>();
+        for (Object[] row : eventRepository.findBookingsOverlappingInChunks(resourceIds, from, to)) {
+            bookings.computeIfAbsent((Long) row[1], id -> new ArrayList<>()).add(new BookingIndex.Booking(
+                    (Long) row[0],
+                    ((ZonedDateTime) row[2]).toInstant().toEpochMilli(),
+                    ((ZonedDateTime) row[3]).toInstant().toEpochMilli()));
+        }
+        return bookings;
+    }
+
+    private static ZonedDateTime toDateTime(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(DateTimeUtils.DEFAULT_ZONE_ID);
+    }
+}
@@ -0,0 +1,379 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.model.Event;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory index of the current and future bookings of every resource, together with the resource
+ * hierarchy, used to check booking conflicts across a whole hierarchy without querying each resource.
+ *
+ * The bookings of a resource are kept sorted by start time. The conflict checks keep the bookings of a
+ * resource from overlapping each other, so at most one booking starting before a period can reach into
+ * it: a lookup is O(log n) plus the bookings actually overlapping the period.
+ *
+ * The index is loaded at startup and reloaded periodically in the background, which also drops the
+ * bookings that are over; in between it is updated by the services when the transactions changing
+ * events or resources commit. Only bookings ending after the last load are indexed, see
+ * {@link #covers(ZonedDateTime)}. Bookings made by other instances are only seen after a reload, so a
+ * free period must still be confirmed against the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookingIndex {
+
+    private final EventRepository eventRepository;
+    private final ResourceRepository resourceRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+
+    // Guarded by lock
+    private State state = new State(Long.MAX_VALUE);
+    // Updates committed while a sync is loading, replayed on the new state; null when idle
+    private List<Consumer<State>> pendingUpdates;
+
+    private volatile boolean ready;
+
+    /**
+     * Whether the index has been loaded at least once
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Reloads the bookings not over yet and the resource hierarchy, and atomically replaces the index.
+     * If the load fails the previous index is kept.
+     */
+    @Scheduled(initialDelayString = "${app.booking-index.initial-delay-ms:0}",
+            fixedDelayString = "${app.booking-index.sync-interval-ms:600000}")
+    public void sync() {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        withWriteLock(() -> pendingUpdates = new ArrayList<>());
+        try {
+            long start = System.currentTimeMillis();
+            State loaded = load(ZonedDateTime.now());
+            withWriteLock(() -> {
+                pendingUpdates.forEach(update -> update.accept(loaded));
+                state = loaded;
+            });
+            ready = true;
+            log.info("Booking index loaded: {} bookings on {} resources in {}ms",
+                    loaded.resourceOfEvent.size(), loaded.parentOf.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Booking index load failed, {}: {}",
+                    ready ? "keeping the previous index" : "conflicts will be checked on the database", e.getMessage(), e);
+        } finally {
+            withWriteLock(() -> pendingUpdates = null);
+            syncing.set(false);
+        }
+    }
+
+    private State load(ZonedDateTime from) {
+        State loaded = new State(from.toInstant().toEpochMilli());
+        for (Object[] row : resourceRepository.findAllParentLinks()) {
+            loaded.putResource((Long) row[0], (Long) row[1]);
+        }
+        for (Object[] row : eventRepository.findBookingsEndingAfter(from)) {
+            loaded.putBooking((Long) row[0], (Long) row[1], (ZonedDateTime) row[2], (ZonedDateTime) row[3]);
+        }
+        return loaded;
+    }
+
+    /**
+     * Whether the bookings that may conflict with a period starting at the given time are all indexed
+     */
+    public boolean covers(ZonedDateTime start) {
+        return ready && read(s -> start.toInstant().toEpochMilli() >= s.coveredFrom);
+    }
+
+    /**
+     * Returns the given resource with all its ancestors and descendants, i.e. the resources that cannot
+     * be booked at the same time as it; empty if the resource is not indexed
+     */
+    public Optional<Set<Long>> getRelatedResourceIds(Long resourceId) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return read(s -> {
+            if (!s.parentOf.containsKey(resourceId)) {
+                return Optional.empty();
+            }
+            Set<Long> related = new LinkedHashSet<>();
+            Long ancestorId = resourceId;
+            // The visited check guards against cycles in the hierarchy
+            while (ancestorId != null && related.add(ancestorId)) {
+                ancestorId = s.parentOf.get(ancestorId);
+            }
+            Deque<Long> toVisit = new ArrayDeque<>(s.childrenOf.getOrDefault(resourceId, Set.of()));
+            while (!toVisit.isEmpty()) {
+                Long id = toVisit.pop();
+                if (related.add(id)) {
+                    toVisit.addAll(s.childrenOf.getOrDefault(id, Set.of()));
+                }
+            }
+            return Optional.of(related);
+        });
+    }
+
+    /**
+     * Tells whether any of the given resources has an indexed booking overlapping the period;
+     * periods are half-open, so back-to-back bookings do not overlap
+     *
+     * @param excludedEventId a booking to ignore, e.g. the one being updated, or null
+     */
+    public boolean hasConflict(Collection<Long> resourceIds, ZonedDateTime start, ZonedDateTime end, Long excludedEventId) {
+        long startMillis = start.toInstant().toEpochMilli();
+        long endMillis = end.toInstant().toEpochMilli();
+        return read(s -> resourceIds.stream()
+                .map(s.timelines::get)
+                .anyMatch(timeline -> timeline != null && timeline.overlaps(startMillis, endMillis, excludedEventId)));
+    }
+
+    /**
+     * Returns the indexed bookings of the given resources overlapping the period,
+     * sorted by start time for each resource
+     */
+    public Map<Long, List<Booking>> findBookings(Collection<Long> resourceIds, ZonedDateTime start, ZonedDateTime end) {
+        long startMillis = start.toInstant().toEpochMilli();
+        long endMillis = end.toInstant().toEpochMilli();
+        return read(s -> {
+            Map<Long, List<Booking>> bookings = new HashMap<>();
+            for (Long resourceId : resourceIds) {
+                Timeline timeline = s.timelines.get(resourceId);
+                List<Booking> overlapping = timeline != null ? timeline.overlapping(startMillis, endMillis) : List.of();
+                if (!overlapping.isEmpty()) {
+                    bookings.put(resourceId, overlapping);
+                }
+            }
+            return bookings;
+        });
+    }
+
+    /**
+     * Indexes a booking, or moves it, when the current transaction commits
+     */
+    public void eventSaved(Event event) {
+        Long eventId = event.getId();
+        Long resourceId = event.getResource().getId();
+        ZonedDateTime start = event.getStart();
+        ZonedDateTime end = event.getEnd();
+        afterCommit(s -> s.putBooking(eventId, resourceId, start, end));
+    }
+
+    /**
+     * Removes a booking when the current transaction commits
+     */
+    public void eventDeleted(Long eventId) {
+        afterCommit(s -> s.removeBooking(eventId));
+    }
+
+    /**
+     * Indexes a resource, or its new position in the hierarchy, when the current transaction commits
+     */
+    public void resourceSaved(Resource resource) {
+        Long resourceId = resource.getId();
+        Long parentId = resource.getParent() != null ? resource.getParent().getId() : null;
+        afterCommit(s -> s.putResource(resourceId, parentId));
+    }
+
+    /**
+     * Removes a resource and its bookings when the current transaction commits
+     */
+    public void resourceDeleted(Long resourceId) {
+        afterCommit(s -> s.removeResource(resourceId));
+    }
+
+    private void afterCommit(Consumer<State> update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update(update);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update(update);
+            }
+        });
+    }
+
+    private void update(Consumer<State> update) {
+        withWriteLock(() -> {
+            update.accept(state);
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        });
+    }
+
+    private <T> T read(Function<State, T> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void withWriteLock(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexed bookings and hierarchy. Not thread-safe, always accessed under the index lock.
+     * Updates are idempotent, so that replaying them on a state loaded after they committed is harmless.
+     */
+    private static final class State {
+        // Bookings ending before this instant (epoch millis) were not loaded
+        private final long coveredFrom;
+        private final Map<Long, Long> parentOf = new HashMap<>();
+        private final Map<Long, Set<Long>> childrenOf = new HashMap<>();
+        private final Map<Long, Timeline> timelines = new HashMap<>();
+        private final Map<Long, Long> resourceOfEvent = new HashMap<>();
+
+        private State(long coveredFrom) {
+            this.coveredFrom = coveredFrom;
+        }
+
+        private void putResource(Long resourceId, Long parentId) {
+            Long previousParentId = parentOf.put(resourceId, parentId);
+            if (previousParentId != null && !previousParentId.equals(parentId)) {
+                removeChild(previousParentId, resourceId);
+            }
+            if (parentId != null) {
+                childrenOf.computeIfAbsent(parentId, id -> new HashSet<>()).add(resourceId);
+            }
+        }
+
+        private void removeResource(Long resourceId) {
+            Long parentId = parentOf.remove(resourceId);
+            if (parentId != null) {
+                removeChild(parentId, resourceId);
+            }
+            childrenOf.remove(resourceId);
+            Timeline timeline = timelines.remove(resourceId);
+            if (timeline != null) {
+                resourceOfEvent.keySet().removeAll(timeline.bookingsById.keySet());
+            }
+        }
+
+        private void removeChild(Long parentId, Long childId) {
+            Set<Long> children = childrenOf.get(parentId);
+            if (children != null) {
+                children.remove(childId);
+                if (children.isEmpty()) {
+                    childrenOf.remove(parentId);
+                }
+            }
+        }
+
+        private void putBooking(Long eventId, Long resourceId, ZonedDateTime start, ZonedDateTime end) {
+            removeBooking(eventId);
+            resourceOfEvent.put(eventId, resourceId);
+            timelines.computeIfAbsent(resourceId, id -> new Timeline())
+                    .add(new Booking(eventId, start.toInstant().toEpochMilli(), end.toInstant().toEpochMilli()));
+        }
+
+        private void removeBooking(Long eventId) {
+            Long resourceId = resourceOfEvent.remove(eventId);
+            Timeline timeline = resourceId != null ? timelines.get(resourceId) : null;
+            if (timeline != null) {
+                timeline.remove(eventId);
+                if (timeline.bookingsById.isEmpty()) {
+                    timelines.remove(resourceId);
+                }
+            }
+        }
+    }
+
+    /**
+     * An indexed booking, with start and end in epoch milliseconds
+     */
+    public record Booking(long eventId, long start, long end) {
+    }
+
+    /**
+     * The bookings of a single resource, sorted by start time and not overlapping each other
+     */
+    private static final class Timeline {
+        private static final Comparator<Booking> BY_START =
+                Comparator.comparingLong(Booking::start).thenComparingLong(Booking::eventId);
+
+        private final NavigableSet<Booking> bookings = new TreeSet<>(BY_START);
+        private final Map<Long, Booking> bookingsById = new HashMap<>();
+
+        private void add(Booking booking) {
+            bookings.add(booking);
+            bookingsById.put(booking.eventId(), booking);
+        }
+
+        private void remove(Long eventId) {
+            Booking booking = bookingsById.remove(eventId);
+            if (booking != null) {
+                bookings.remove(booking);
+            }
+        }
+
+        private boolean overlaps(long start, long end, Long excludedEventId) {
+            for (Booking booking : candidates(start, end)) {
+                if (booking.end() > start && (excludedEventId == null || booking.eventId() != excludedEventId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<Booking> overlapping(long start, long end) {
+            List<Booking> overlapping = new ArrayList<>();
+            for (Booking booking : candidates(start, end)) {
+                if (booking.end() > start) {
+                    overlapping.add(booking);
+                }
+            }
+            return overlapping;
+        }
+
+        /**
+         * The last booking starting before the period, if any, and the bookings starting within it
+         */
+        private List<Booking> candidates(long start, long end) {
+            List<Booking> candidates = new ArrayList<>();
+            Booking before = bookings.lower(probe(start));
+            if (before != null) {
+                candidates.add(before);
+            }
+            candidates.addAll(bookings.subSet(probe(start), true, probe(end), false));
+            return candidates;
+        }
+
+        /**
+         * Sorts before any booking starting at the given time
+         */
+        private static Booking probe(long start) {
+            return new Booking(Long.MIN_VALUE, start, 0);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.PessimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the bookings that may conflict with each other, so that a conflict check and the save
+ * that follows it cannot interleave with another booking in the same resource hierarchy.
+ *
+ * Bookings conflict across a whole hierarchy, so locks are keyed by the root of the hierarchy of the
+ * booked resource: bookings in different hierarchies run fully in parallel. Within the instance the
+ * roots are mapped to a fixed set of lock stripes; across instances the row of the root resource is
+ * locked as well (SELECT ... FOR UPDATE), which works the same on every supported database.
+ * Locks are held until the current transaction completes, i.e. until the booking is committed and
+ * visible to the next conflict check.
+ */
+@Component
+@Slf4j
+public class BookingLockManager {
+
+    // Attempts when the hierarchies keep changing while they are being locked
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ResourceHierarchyService resourceHierarchyService;
+    private final ResourceRepository resourceRepository;
+    private final ReentrantLock[] stripes;
+    private final long lockTimeoutMs;
+    private final boolean databaseLocks;
+
+    public BookingLockManager(ResourceHierarchyService resourceHierarchyService,
+                              ResourceRepository resourceRepository,
+                              @Value("${app.booking-lock.stripes:256}") int stripeCount,
+                              @Value("${app.booking-lock.timeout-ms:10000}") long lockTimeoutMs,
+                              @Value("${app.booking-lock.database-locks:true}") boolean databaseLocks) {
+        this.resourceHierarchyService = resourceHierarchyService;
+        this.resourceRepository = resourceRepository;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.lockTimeoutMs = lockTimeoutMs;
+        this.databaseLocks = databaseLocks;
+    }
+
+    /**
+     * Locks the hierarchies of the given resources until the current transaction completes.
+     * Locks are always taken in the same order, so that callers locking several hierarchies
+     * (e.g. moving a booking to another resource) cannot deadlock. The hierarchies are resolved again
+     * once locked, as a concurrent move may have changed them in between, and locked again if so.
+     *
+     * @throws IllegalStateException if there is no transaction
+     * @throws ResourceBusyException if the locks are not obtained in time
+     */
+    public void lockHierarchies(Collection<Long> resourceIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Booking locks can only be taken within a transaction");
+        }
+
+        SortedSet<Long> rootIds = resolveRootIds(resourceIds);
+        for (int attempt = 1; ; attempt++) {
+            List<ReentrantLock> acquired = lockStripes(rootIds);
+            SortedSet<Long> lockedRootIds = rootIds;
+            try {
+                if (databaseLocks) {
+                    lockedRootIds.forEach(this::lockRootRow);
+                }
+                rootIds = resolveRootIds(resourceIds);
+            } catch (RuntimeException e) {
+                unlock(acquired);
+                throw e;
+            }
+
+            if (rootIds.equals(lockedRootIds)) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        unlock(acquired);
+                    }
+                });
+                log.debug("Booking locks taken on hierarchies {}", rootIds);
+                return;
+            }
+
+            // The database locks already taken are kept until the transaction completes
+            unlock(acquired);
+            if (attempt == MAX_ATTEMPTS) {
+                throw new ResourceBusyException("The resource hierarchy is being changed, please retry");
+            }
+            log.debug("Hierarchies of {} changed from {} to {} while locking, retrying", resourceIds, lockedRootIds, rootIds);
+        }
+    }
+
+    private SortedSet<Long> resolveRootIds(Collection<Long> resourceIds) {
+        SortedSet<Long> rootIds = new TreeSet<>();
+        resourceIds.stream()
+                .filter(Objects::nonNull)
+                .map(resourceHierarchyService::getRootId)
+                .forEach(rootIds::add);
+        return rootIds;
+    }
+
+    private List<ReentrantLock> lockStripes(SortedSet<Long> rootIds) {
+        SortedSet<Integer> stripeIndexes = new TreeSet<>();
+        rootIds.forEach(rootId -> stripeIndexes.add(Math.floorMod(rootId.hashCode(), stripes.length)));
+
+        List<ReentrantLock> acquired = new ArrayList<>(stripeIndexes.size());
+        try {
+            for (int index : stripeIndexes) {
+                ReentrantLock stripe = stripes[index];
+                if (!stripe.tryLock(lockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new ResourceBusyException("The resource is busy with other bookings, please retry");
+                }
+                acquired.add(stripe);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unlock(acquired);
+            throw new ResourceBusyException("Interrupted while waiting for the booking lock", e);
+        } catch (ResourceBusyException e) {
+            unlock(acquired);
+            throw e;
+        }
+        return acquired;
+    }
+
+    private void lockRootRow(Long rootId) {
+        try {
+            resourceRepository.lockById(rootId);
+        } catch (PessimisticLockingFailureException | PessimisticLockException | LockTimeoutException e) {
+            throw new ResourceBusyException("The resource is busy with other bookings, please retry", e);
+        }
+    }
+
+    private static void unlock(List<ReentrantLock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            acquired.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.dto.MembershipJobDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs membership operations over many items (users or groups) in parallel on virtual threads,
+ * with a cap on the operations in flight so that Keycloak is not flooded.
+ * Items that fail are retried in further rounds, with a growing pause in between; the ones still
+ * failing after the last attempt are reported in the job. Jobs can run in the background and be
+ * polled by ID, or be awaited by the caller.
+ */
+@Component
+@Slf4j
+public class BulkMembershipExecutor {
+
+    /**
+     * A membership operation on a single item
+     */
+    @FunctionalInterface
+    public interface MembershipOperation {
+        void apply(String item) throws Exception;
+    }
+
+    @Value("${app.bulk-membership.concurrency:8}")
+    private int concurrency;
+
+    @Value("${app.bulk-membership.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.bulk-membership.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${app.bulk-membership.job-retention-ms:3600000}")
+    private long jobRetentionMs;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a job in the background
+     *
+     * @param jobId the ID of the job, a random one if null
+     * @param description what the job does, for progress reports and logs
+     * @param items the items to apply the operation to
+     * @param operation the operation
+     * @return the progress of the job just started
+     */
+    public MembershipJobDTO submit(String jobId, String description, Collection<String> items, MembershipOperation operation) {
+        Job job = start(jobId, description, items);
+        executor.submit(() -> execute(job, operation));
+        return job.snapshot();
+    }
+
+    /**
+     * Runs a job and waits for it to finish, including the retries
+     *
+     * @return the final outcome of the job
+     */
+    public MembershipJobDTO run(String description, Collection<String> items, MembershipOperation operation) {
+        Job job = start(null, description, items);
+        execute(job, operation);
+        return job.snapshot();
+    }
+
+    /**
+     * Returns the progress of a running job, or the outcome of a recently finished one
+     */
+    public Optional<MembershipJobDTO> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::snapshot);
+    }
+
+    private Job start(String jobId, String description, Collection<String> items) {
+        purgeFinishedJobs();
+        Job job = new Job(jobId != null ? jobId : UUID.randomUUID().toString(), description, new LinkedHashSet<>(items));
+        jobs.put(job.id, job);
+        log.info("Membership job {} started: {} ({} items)", job.id, description, job.items.size());
+        return job;
+    }
+
+    private void execute(Job job, MembershipOperation operation) {
+        List<String> pending = new ArrayList<>(job.items);
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        try {
+            for (int attempt = 1; attempt <= maxAttempts && !pending.isEmpty(); attempt++) {
+                if (attempt > 1) {
+                    log.info("Membership job {}: retrying {} failed items (attempt {}/{})",
+                            job.id, pending.size(), attempt, maxAttempts);
+                    Thread.sleep(retryBackoffMs * (attempt - 1));
+                }
+                job.attempt = attempt;
+                failures = runRound(job, pending, operation);
+                pending = new ArrayList<>(failures.keySet());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Membership job {} interrupted with {} items pending", job.id, pending.size());
+        }
+
+        job.failedItems = List.copyOf(pending);
+        job.finishedAt = ZonedDateTime.now();
+        job.status = pending.isEmpty() ? MembershipJobDTO.Status.COMPLETED : MembershipJobDTO.Status.COMPLETED_WITH_ERRORS;
+        if (pending.isEmpty()) {
+            log.info("Membership job {} completed: {} items", job.id, job.succeeded.get());
+        } else {
+            Exception example = failures.get(pending.get(0));
+            log.error("Membership job {} completed with {} failed items out of {}, e.g. {}: {}", job.id, pending.size(),
+                    job.items.size(), pending.get(0), example != null ? example.getMessage() : "interrupted");
+        }
+    }
+
+    /**
+     * Applies the operation to the given items, at most {@code concurrency} at a time
+     *
+     * @return the items that failed, with their error
+     */
+    private Map<String, Exception> runRound(Job job, List<String> items, MembershipOperation operation) throws InterruptedException {
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        for (String item : items) {
+            permits.acquire();
+            futures.add(executor.submit(() -> {
+                try {
+                    operation.apply(item);
+                    job.succeeded.incrementAndGet();
+                } catch (Exception e) {
+                    log.debug("Membership job {}: item {} failed: {}", job.id, item, e.getMessage());
+                    failures.put(item, e);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Failures are collected by the tasks themselves
+            }
+        }
+        job.failed.set(failures.size());
+        // Keep the order of the items for reporting
+        Map<String, Exception> ordered = new LinkedHashMap<>();
+        items.stream().filter(failures::containsKey).forEach(item -> ordered.put(item, failures.get(item)));
+        return ordered;
+    }
+
+    private void purgeFinishedJobs() {
+        ZonedDateTime threshold = ZonedDateTime.now().minusNanos(jobRetentionMs * 1_000_000);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(threshold));
+    }
+
+    private static final class Job {
+        private final String id;
+        private final String description;
+        private final Set<String> items;
+        private final ZonedDateTime startedAt = ZonedDateTime.now();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile int attempt;
+        private volatile MembershipJobDTO.Status status = MembershipJobDTO.Status.RUNNING;
+        private volatile List<String> failedItems = List.of();
+        private volatile ZonedDateTime finishedAt;
+
+        private Job(String id, String description, Set<String> items) {
+            this.id = id;
+            this.description = description;
+            this.items = items;
+        }
+
+        private MembershipJobDTO snapshot() {
+            return MembershipJobDTO.builder()
+                    .id(id)
+                    .description(description)
+                    .status(status)
+                    .total(items.size())
+                    .succeeded(succeeded.get())
+                    .failed(failed.get())
+                    .attempt(attempt)
+                    .failedItems(failedItems)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .build();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package it.polito.cloudresources.be.service;
 
+import it.polito.cloudresources.be.dto.EventBatchRequestDTO;
+import it.polito.cloudresources.be.dto.EventBatchResultDTO;
 import it.polito.cloudresources.be.dto.EventDTO;
+import it.polito.cloudresources.be.dto.EventPageDTO;
 import it.polito.cloudresources.be.mapper.EventMapper;
 import it.polito.cloudresources.be.model.AuditLog;
 import it.polito.cloudresources.be.model.Event;
@@ -11,19 +14,25 @@ import it.polito.cloudresources.be.model.WebhookEventType;
 import it.polito.cloudresources.be.repository.EventRepository;
 import it.polito.cloudresources.be.repository.ResourceRepository;
 import it.polito.cloudresources.be.util.DateTimeUtils;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 /**
@@ -34,26 +43,38 @@ import java.util.stream.Collectors;
 @Slf4j
 public class EventService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_CHUNK_SIZE = 500;
+    // Bound to the site IN clause when every site is accessible, as an empty IN list is not valid SQL
+    private static final List<String> ALL_SITES = List.of("");
+
     private final EventRepository eventRepository;
     private final ResourceRepository resourceRepository;
     private final NotificationService notificationService;
     private final ResourceService resourceService;
     private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final AuditLogService auditLogService;
     private final WebhookService webhookService;
     private final EventMapper eventMapper;
     private final DateTimeUtils dateTimeUtils;
+    private final BookingIndex bookingIndex;
+    private final ResourceHierarchyService resourceHierarchyService;
+    private final BookingLockManager bookingLockManager;
+    private final EntityManager entityManager;
+    private final Validator validator;
 
     /**
      * Get all events based on user site access
      */
     public List<EventDTO> getAllEvents(String userId) {
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        if (access.isGlobalAdmin()) {
             // Global admins see all events
             return eventMapper.toDto(eventRepository.findAll());
         } else {
             // Site admins and regular users see only events for resources in their sites
-            List<String> userSites = keycloakService.getUserSites(userId);
+            List<String> userSites = new ArrayList<>(access.getMemberSiteIds());
 
             if (userSites.isEmpty()) {
                 return new ArrayList<>();
@@ -64,13 +85,123 @@ public class EventService {
         }
     }
 
+    /**
+     * Filter of the event listings, with the sites accessible to the requesting user already resolved
+     */
+    public record EventFilter(boolean allSites, Collection<String> siteIds, Long resourceId,
+                              ZonedDateTime startDate, ZonedDateTime endDate) {
+
+        private boolean matchesNothing() {
+            return !allSites && siteIds.isEmpty();
+        }
+    }
+
+    /**
+     * Resolve the filter of an event listing: the events of the given site, or of every site the user
+     * can access, optionally of a single resource and starting in a date range
+     */
+    public EventFilter resolveEventFilter(String siteId, Long resourceId, ZonedDateTime startDate,
+                                          ZonedDateTime endDate, String userId) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        if (resourceId != null) {
+            Resource resource = resourceRepository.findById(resourceId)
+                    .orElseThrow(() -> new EntityNotFoundException("Resource not found with ID: " + resourceId));
+            if (!resourceService.canAccessResource(userId, resource)) {
+                throw new AccessDeniedException("You don't have access to events for this resource");
+            }
+        }
+
+        boolean allSites = false;
+        Collection<String> siteIds;
+        if (siteId != null) {
+            if (!access.canAccessSite(siteId)) {
+                throw new AccessDeniedException("User does not have access to this site");
+            }
+            siteIds = List.of(siteId);
+        } else if (access.isGlobalAdmin()) {
+            allSites = true;
+            siteIds = ALL_SITES;
+        } else {
+            siteIds = new ArrayList<>(access.getMemberSiteIds());
+        }
+
+        return new EventFilter(allSites, siteIds, resourceId,
+                startDate != null ? dateTimeUtils.ensureTimeZone(startDate) : null,
+                endDate != null ? dateTimeUtils.ensureTimeZone(endDate) : null);
+    }
+
+    /**
+     * Get a page of events in (start, id) order. Pages are located by the position of the last event of
+     * the previous page rather than by an offset, so each one costs the same whatever its position.
+     *
+     * @param cursor the nextCursor of the previous page, null for the first page
+     * @param limit the maximum number of events in the page
+     */
+    @Transactional(readOnly = true)
+    public EventPageDTO getEventPage(EventFilter filter, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("The page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (filter.matchesNothing()) {
+            return new EventPageDTO(List.of(), null);
+        }
+
+        ZonedDateTime afterStart = null;
+        Long afterId = null;
+        if (cursor != null) {
+            try {
+                String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+                afterStart = Instant.parse(position[0]).atZone(DateTimeUtils.DEFAULT_ZONE_ID);
+                afterId = Long.valueOf(position[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+
+        // One more event than requested tells whether there is a next page
+        List<Event> events = eventRepository.findEventPage(filter.allSites(), filter.siteIds(), filter.resourceId(),
+                filter.startDate(), filter.endDate(), afterStart, afterId, PageRequest.of(0, limit + 1));
+        String nextCursor = null;
+        if (events.size() > limit) {
+            events = events.subList(0, limit);
+            Event last = events.get(limit - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (last.getStart().toInstant() + "," + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new EventPageDTO(eventMapper.toDto(events), nextCursor);
+    }
+
+    /**
+     * Stream all the events matching the filter in (start, id) order. Events are read from the database
+     * with a fetch size and handed over in chunks, each mapped with a single user lookup and then
+     * evicted from the persistence context, so memory use does not grow with the number of events.
+     */
+    @Transactional(readOnly = true)
+    public void streamEvents(EventFilter filter, Consumer<List<EventDTO>> chunkConsumer) {
+        if (filter.matchesNothing()) {
+            return;
+        }
+        try (Stream<Event> events = eventRepository.streamEvents(filter.allSites(), filter.siteIds(),
+                filter.resourceId(), filter.startDate(), filter.endDate(), null, null)) {
+            List<Event> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+            Iterator<Event> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == STREAM_CHUNK_SIZE || !iterator.hasNext()) {
+                    chunkConsumer.accept(eventMapper.toDto(chunk));
+                    chunk.forEach(entityManager::detach);
+                    chunk.clear();
+                }
+            }
+        }
+    }
+
     /**
      * Get events by site
      */
     public List<EventDTO> getEventsBySite(String siteId, String userId) {
         // Validate user has access
-        if (!keycloakService.isUserInGroup(userId, siteId) &&
-                !keycloakService.hasGlobalAdminRole(userId)) {
+        if (!accessContextService.getAccessContext(userId).canAccessSite(siteId)) {
             throw new AccessDeniedException("User does not have access to this site");
         }
 
@@ -118,13 +249,15 @@ public class EventService {
      * Get events by user's Keycloak ID
      */
     public List<EventDTO> getEventsByUserKeycloakId(String keycloakId, String requestUserId) {
+        AccessContext access = accessContextService.getAccessContext(requestUserId);
+
         // Users can always see their own events, administrators see events from their site
-        if (keycloakId.equals(requestUserId) || keycloakService.hasGlobalAdminRole(requestUserId)) {
+        if (keycloakId.equals(requestUserId) || access.isGlobalAdmin()) {
             return eventMapper.toDto(eventRepository.findByKeycloakId(keycloakId));
         }
         
         // Site admins can see events from users in their sites
-        List<String> adminSites = keycloakService.getUserAdminGroups(requestUserId);
+        Set<String> adminSites = access.getAdminSiteIds();
         List<String> userSites = keycloakService.getUserSites(keycloakId);
         
         // Check if the request user is admin of any site the target user belongs to
@@ -150,7 +283,7 @@ public class EventService {
     }
 
     /**
-     * Get events by date range
+     * Get events by date range: the events overlapping it in the sites the user can access
      */
     public List<EventDTO> getEventsByDateRange(ZonedDateTime startDate, ZonedDateTime endDate, String userId) {
         // Make sure both dates have time zone info
@@ -159,25 +292,22 @@ public class EventService {
 
         log.debug("getEventsByDateRange called for userId: {}", userId); // Log the incoming userId
 
-        List<Event> events = eventRepository.findByDateRange(normalizedStartDate, normalizedEndDate);
-
-        // Filter events based on site access
-        List<Event> accessibleEvents;
+        List<Event> events;
 
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        if (access.isGlobalAdmin()) {
             // Global admins see all events
-            accessibleEvents = events;
+            events = eventRepository.findByDateRange(normalizedStartDate, normalizedEndDate);
         } else {
             // Site users see only events for resources in their sites
-            log.debug("Attempting to fetch sites for user ID: {}", userId); // Log before the potentially failing call
-            List<String> userSites = keycloakService.getUserSites(userId); // This call might be failing
-
-            accessibleEvents = events.stream()
-                    .filter(event -> userSites.contains(event.getResource().getSiteId()))
-                    .collect(Collectors.toList());
+            Set<String> userSites = access.getMemberSiteIds();
+            if (userSites.isEmpty()) {
+                return new ArrayList<>();
+            }
+            events = eventRepository.findByDateRangeAndSiteIds(normalizedStartDate, normalizedEndDate, userSites);
         }
 
-        return eventMapper.toDto(accessibleEvents);
+        return eventMapper.toDto(events);
     }
 
     /**
@@ -199,7 +329,7 @@ public class EventService {
         }
         
         // Validate time period
-        if (eventDTO.getEnd().isBefore(eventDTO.getStart())) {
+        if (!eventDTO.getEnd().isAfter(eventDTO.getStart())) {
             throw new IllegalStateException("End time must be after start time");
         }
         
@@ -212,7 +342,8 @@ public class EventService {
             throw new AccessDeniedException("You don't have access to book this resource");
         }
         
-        // Check for time conflicts
+        // Check for time conflicts, with no other booking in the same hierarchy until this one is committed
+        bookingLockManager.lockHierarchies(List.of(eventDTO.getResourceId()));
         if (hasTimeConflict(eventDTO.getResourceId(), eventDTO.getStart(), eventDTO.getEnd(), null)) {
             throw new IllegalStateException("The selected time period conflicts with existing bookings");
         }
@@ -227,8 +358,7 @@ public class EventService {
         
         if (!eventUserId.equals(userId)) {
             // Check if the requester is admin for the resource's site
-            if (!keycloakService.hasGlobalAdminRole(userId) && 
-                !keycloakService.isUserSiteAdmin(userId, resource.getSiteId())) {
+            if (!accessContextService.getAccessContext(userId).isSiteAdmin(resource.getSiteId())) {
                 throw new AccessDeniedException("Only administrators can create bookings for other users");
             }
             
@@ -244,24 +374,17 @@ public class EventService {
         }
         
         // Verify user exists in Keycloak
-        keycloakService.getUserById(eventDTO.getUserId())
+        UserRepresentation eventUser = keycloakService.getUserById(eventDTO.getUserId())
             .orElseThrow(() -> new EntityNotFoundException("User not found with Keycloak ID: " + eventDTO.getUserId()));
         
         Event event = eventMapper.toEntity(eventDTO);
         Event savedEvent = eventRepository.save(event);
+        bookingIndex.eventSaved(savedEvent);
         
         log.debug("Saved event: {}", savedEvent);
         
         // Get user display name for notification
-        String userDisplayName = "Unknown user";
-        try {
-            Optional<UserRepresentation> user = keycloakService.getUserById(event.getKeycloakId());
-            if (user.isPresent()) {
-                userDisplayName = user.get().getFirstName() + " " + user.get().getLastName();
-            }
-        } catch (Exception e) {
-            log.warn("Could not fetch user details for notification", e);
-        }
+        String userDisplayName = eventUser.getFirstName() + " " + eventUser.getLastName();
         
         // Send notification to resource admin
         notificationService.createSystemNotification(
@@ -285,6 +408,190 @@ public class EventService {
         return eventMapper.toDto(savedEvent);
     }
 
+    /**
+     * Create many events at once. Access is checked once per resource and site, the users are looked up
+     * together, and the requested periods are checked against each other and against the existing
+     * bookings of all the involved hierarchies with a single query. The created events are reported
+     * with one audit entry and one admin notification, and the webhooks are looked up once per resource.
+     * Each booking is validated here rather than with the request, so that an invalid one is reported
+     * by its index like any other rejection. In ALL_OR_NOTHING mode nothing is created if any booking
+     * is rejected.
+     */
+    @Transactional
+    public EventBatchResultDTO createEvents(EventBatchRequestDTO request, String userId) {
+        List<EventDTO> requested = request.getEvents();
+        EventBatchRequestDTO.Mode mode = request.getMode() != null ? request.getMode() : EventBatchRequestDTO.Mode.ALL_OR_NOTHING;
+        Map<Integer, String> rejections = new TreeMap<>();
+
+        Map<Long, Resource> resources = resourceRepository.findAllById(requested.stream()
+                        .filter(Objects::nonNull)
+                        .map(EventDTO::getResourceId).filter(Objects::nonNull).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Resource::getId, resource -> resource));
+        AccessContext access = accessContextService.getAccessContext(userId);
+        Map<String, UserRepresentation> users = keycloakService.getUsersByIds(requested.stream()
+                .filter(Objects::nonNull)
+                .map(eventDTO -> eventDTO.getUserId() != null ? eventDTO.getUserId() : userId)
+                .collect(Collectors.toSet()));
+        Map<String, Boolean> siteMemberships = new HashMap<>();
+
+        // Validate every booking on its own
+        for (int i = 0; i < requested.size(); i++) {
+            EventDTO eventDTO = requested.get(i);
+            if (eventDTO == null) {
+                rejections.put(i, "Event is missing");
+                continue;
+            }
+            String violations = validator.validate(eventDTO).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            if (!violations.isEmpty()) {
+                rejections.put(i, violations);
+                continue;
+            }
+            eventDTO.setStart(dateTimeUtils.ensureTimeZone(eventDTO.getStart()));
+            eventDTO.setEnd(dateTimeUtils.ensureTimeZone(eventDTO.getEnd()));
+            if (eventDTO.getUserId() == null) {
+                eventDTO.setUserId(userId);
+            }
+            Resource resource = resources.get(eventDTO.getResourceId());
+
+            if (!eventDTO.getEnd().isAfter(eventDTO.getStart())) {
+                rejections.put(i, "End time must be after start time");
+            } else if (resource == null) {
+                rejections.put(i, "Resource not found with ID: " + eventDTO.getResourceId());
+            } else if (!access.canAccessSite(resource.getSiteId())) {
+                rejections.put(i, "You don't have access to book this resource");
+            } else if (resource.getStatus() != ResourceStatus.ACTIVE) {
+                rejections.put(i, "Cannot book a resource that is not in ACTIVE state. Current state: " + resource.getStatus());
+            } else if (!eventDTO.getUserId().equals(userId) && !access.isSiteAdmin(resource.getSiteId())) {
+                rejections.put(i, "Only administrators can create bookings for other users");
+            } else if (!eventDTO.getUserId().equals(userId) && !siteMemberships.computeIfAbsent(
+                    eventDTO.getUserId() + "/" + resource.getSiteId(),
+                    key -> keycloakService.isUserInGroup(eventDTO.getUserId(), resource.getSiteId()))) {
+                rejections.put(i, "The user must be a member of the resource's site to book it");
+            } else if (!users.containsKey(eventDTO.getUserId())) {
+                rejections.put(i, "User not found with Keycloak ID: " + eventDTO.getUserId());
+            }
+        }
+
+        // Check the remaining bookings against the existing ones and against each other, in request order
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < requested.size(); i++) {
+            if (!rejections.containsKey(i)) {
+                candidates.add(i);
+            }
+        }
+        if (!candidates.isEmpty()) {
+            Set<Long> resourceIds = candidates.stream()
+                    .map(i -> requested.get(i).getResourceId())
+                    .collect(Collectors.toCollection(TreeSet::new));
+            bookingLockManager.lockHierarchies(resourceIds);
+
+            Map<Long, Set<Long>> relatedResourceIds = resourceHierarchyService.getRelatedResourceIds(resourceIds);
+            ZonedDateTime from = candidates.stream().map(i -> requested.get(i).getStart()).min(Comparator.naturalOrder()).get();
+            ZonedDateTime to = candidates.stream().map(i -> requested.get(i).getEnd()).max(Comparator.naturalOrder()).get();
+            Map<Long, List<Period>> bookings = findBookingsOverlapping(
+                    relatedResourceIds.values().stream().flatMap(Set::stream).collect(Collectors.toSet()), from, to);
+            Map<Long, List<Period>> accepted = new HashMap<>();
+
+            for (int i : candidates) {
+                EventDTO eventDTO = requested.get(i);
+                Set<Long> related = relatedResourceIds.getOrDefault(eventDTO.getResourceId(), Set.of(eventDTO.getResourceId()));
+                if (overlapsAny(related, bookings, eventDTO.getStart(), eventDTO.getEnd())) {
+                    rejections.put(i, "The selected time period conflicts with existing bookings");
+                } else if (overlapsAny(related, accepted, eventDTO.getStart(), eventDTO.getEnd())) {
+                    rejections.put(i, "The selected time period conflicts with another booking of the batch");
+                } else {
+                    accepted.computeIfAbsent(eventDTO.getResourceId(), id -> new ArrayList<>())
+                            .add(new Period(eventDTO.getStart(), eventDTO.getEnd()));
+                }
+            }
+        }
+
+        List<EventBatchResultDTO.Rejection> rejected = rejections.entrySet().stream()
+                .map(entry -> new EventBatchResultDTO.Rejection(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        if (!rejected.isEmpty() && mode == EventBatchRequestDTO.Mode.ALL_OR_NOTHING) {
+            return EventBatchResultDTO.builder().mode(mode).created(List.of()).rejected(rejected).build();
+        }
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < requested.size(); i++) {
+            if (!rejections.containsKey(i)) {
+                events.add(eventMapper.toEntity(requested.get(i)));
+            }
+        }
+        List<Event> savedEvents = eventRepository.saveAll(events);
+        savedEvents.forEach(bookingIndex::eventSaved);
+
+        if (!savedEvents.isEmpty()) {
+            Set<String> siteIds = savedEvents.stream().map(event -> event.getResource().getSiteId()).collect(Collectors.toSet());
+            String siteName = siteIds.size() == 1
+                    ? keycloakService.getSiteNameById(siteIds.iterator().next(), "Unknown site")
+                    : "Multiple sites";
+            String eventIds = savedEvents.stream().map(event -> event.getId().toString()).collect(Collectors.joining(","));
+
+            auditLogService.logCrudAction(AuditLog.LogType.USER,
+                    AuditLog.LogAction.CREATE,
+                    new AuditLog.LogEntity("EVENT", eventIds),
+                    "User: " + userId + " created " + savedEvents.size() + " events in a batch",
+                    siteName);
+
+            // One notification to the resource admins for the whole batch
+            String resourceNames = savedEvents.stream().map(event -> event.getResource().getName())
+                    .distinct().collect(Collectors.joining(", "));
+            String userDisplayNames = savedEvents.stream().map(Event::getKeycloakId)
+                    .filter(Objects::nonNull).distinct()
+                    .map(users::get).filter(Objects::nonNull)
+                    .map(user -> user.getFirstName() + " " + user.getLastName())
+                    .collect(Collectors.joining(", "));
+            ZonedDateTime firstStart = savedEvents.stream().map(Event::getStart).min(Comparator.naturalOrder()).orElseThrow();
+            ZonedDateTime lastEnd = savedEvents.stream().map(Event::getEnd).max(Comparator.naturalOrder()).orElseThrow();
+            notificationService.createSystemNotification(
+                    savedEvents.size() + " new bookings created for " + resourceNames + " by " + userDisplayNames,
+                    "New bookings from " + dateTimeUtils.formatDateTime(firstStart) +
+                    " to " + dateTimeUtils.formatDateTime(lastEnd)
+            );
+
+            webhookService.processResourceEventBatch(WebhookEventType.EVENT_CREATED, savedEvents);
+        }
+
+        return EventBatchResultDTO.builder()
+                .mode(mode)
+                .created(eventMapper.toDto(savedEvents))
+                .rejected(rejected)
+                .build();
+    }
+
+    /**
+     * Find the bookings of the given resources overlapping a period, by resource
+     */
+    private Map<Long, List<Period>> findBookingsOverlapping(Collection<Long> resourceIds, ZonedDateTime start, ZonedDateTime end) {
+        Map<Long, List<Period>> bookings = new HashMap<>();
+        for (Object[] row : eventRepository.findBookingsOverlappingInChunks(resourceIds, start, end)) {
+            bookings.computeIfAbsent((Long) row[1], id -> new ArrayList<>())
+                    .add(new Period((ZonedDateTime) row[2], (ZonedDateTime) row[3]));
+        }
+        return bookings;
+    }
+
+    private static boolean overlapsAny(Set<Long> resourceIds, Map<Long, List<Period>> bookings,
+                                       ZonedDateTime start, ZonedDateTime end) {
+        return resourceIds.stream()
+                .flatMap(id -> bookings.getOrDefault(id, List.of()).stream())
+                .anyMatch(booking -> booking.overlaps(start, end));
+    }
+
+    /**
+     * A booked period, half-open like in the conflict queries
+     */
+    private record Period(ZonedDateTime start, ZonedDateTime end) {
+        boolean overlaps(ZonedDateTime otherStart, ZonedDateTime otherEnd) {
+            return start.isBefore(otherEnd) && end.isAfter(otherStart);
+        }
+    }
+
     /**
      * Update existing event
      */
@@ -339,12 +646,13 @@ public class EventService {
                     }
                     
                     // Validate time period after updates
-                    if (existingEvent.getEnd().isBefore(existingEvent.getStart())) {
+                    if (!existingEvent.getEnd().isAfter(existingEvent.getStart())) {
                         throw new IllegalStateException("End time must be after start time");
                     }
                     
                     // Check for time conflicts (excluding this event)
                     Long resourceId = eventDTO.getResourceId() != null ? eventDTO.getResourceId() : existingEvent.getResource().getId();
+                    bookingLockManager.lockHierarchies(List.of(existingEvent.getResource().getId(), resourceId));
                     if (hasTimeConflict(resourceId, existingEvent.getStart(), existingEvent.getEnd(), id)) {
                         throw new IllegalStateException("The selected time period conflicts with existing bookings");
                     }
@@ -370,10 +678,7 @@ public class EventService {
                     // Update user (Keycloak ID) if provided and requester is admin
                     if (eventDTO.getUserId() != null && !eventDTO.getUserId().equals(existingEvent.getKeycloakId())) {
                         // Only admins can change the user
-                        boolean isGlobalAdmin = keycloakService.hasGlobalAdminRole(userId);
-                        boolean isSiteAdmin = keycloakService.isUserSiteAdmin(userId, existingEvent.getResource().getSiteId());
-                        
-                        if (!isGlobalAdmin && !isSiteAdmin) {
+                        if (!accessContextService.getAccessContext(userId).isSiteAdmin(existingEvent.getResource().getSiteId())) {
                             throw new AccessDeniedException("Only administrators can change the booking owner");
                         }
                         
@@ -390,6 +695,7 @@ public class EventService {
                     }
                     
                     Event updatedEvent = eventRepository.save(existingEvent);
+                    bookingIndex.eventSaved(updatedEvent);
                     String siteName = keycloakService.getSiteNameById(updatedEvent.getResource().getSiteId(), "Unknown site");
 
                     auditLogService.logCrudAction(AuditLog.LogType.USER,
@@ -431,6 +737,7 @@ public class EventService {
 
         // Delete the entity first to avoid transaction conflicts
         eventRepository.deleteById(id);
+        bookingIndex.eventDeleted(id);
 
         // Log the audit action after successful deletion
         auditLogService.logCrudAction(AuditLog.LogType.USER,
@@ -446,52 +753,26 @@ public class EventService {
     }
 
     /**
-     * Check if there's a time conflict for a resource booking
+     * Check if there's a time conflict for a resource booking, i.e. if the resource, any of its ancestors
+     * or any of its descendants is booked during the period.
+     * Conflicts are looked up in the booking index first; a period free there is confirmed with a single
+     * query over the resource closure table, which also sees the bookings made by other instances since
+     * the last index load.
      */
     public boolean hasTimeConflict(Long resourceId, ZonedDateTime start, ZonedDateTime end, Long eventId) {
         // Normalize dates with time zone info
         ZonedDateTime normalizedStart = dateTimeUtils.ensureTimeZone(start);
         ZonedDateTime normalizedEnd = dateTimeUtils.ensureTimeZone(end);
-        
-        // Get the resource
-        Resource resource = resourceRepository.findById(resourceId)
-            .orElseThrow(() -> new EntityNotFoundException("Resource not found"));
-        
-        // Check conflicts for this specific resource
-        List<Event> directConflicts = eventRepository.findConflictingEvents(
-            resourceId, normalizedStart, normalizedEnd, eventId);
-            
-        if (!directConflicts.isEmpty()) {
-            return true;
-        }
-        
-        // Check if any parent resource is booked during this time
-        Resource parent = resource.getParent();
-        while (parent != null) {
-            List<Event> parentConflicts = eventRepository.findConflictingEvents(
-                parent.getId(), normalizedStart, normalizedEnd, eventId);
-                
-            if (!parentConflicts.isEmpty()) {
-                return true;
-            }
-            
-            parent = parent.getParent();
-        }
-        
-        // Check if any child resource is booked during this time
-        List<Resource> allSubResources = new ArrayList<>();
-        resourceService.collectAllSubResources(resource, allSubResources);
-        
-        for (Resource subResource : allSubResources) {
-            List<Event> childConflicts = eventRepository.findConflictingEvents(
-                subResource.getId(), normalizedStart, normalizedEnd, eventId);
-                
-            if (!childConflicts.isEmpty()) {
+
+        if (bookingIndex.covers(normalizedStart)) {
+            Set<Long> resourceIds = bookingIndex.getRelatedResourceIds(resourceId)
+                    .orElseGet(() -> resourceHierarchyService.getRelatedResourceIds(resourceId));
+            if (bookingIndex.hasConflict(resourceIds, normalizedStart, normalizedEnd, eventId)) {
                 return true;
             }
         }
-        
-        return false;
+
+        return eventRepository.existsConflictInHierarchy(resourceId, normalizedStart, normalizedEnd, eventId);
     }
 
     /**
@@ -514,14 +795,9 @@ public class EventService {
             return true;
         }
         
-        // Global admins can modify all events
-        if (keycloakService.hasGlobalAdminRole(userId)) {
-            return true;
-        }
-        
-        // Site admins can modify events in their sites
+        // Global admins can modify all events, site admins can modify events in their sites
         String siteId = event.getResource().getSiteId();
-        return keycloakService.isUserSiteAdmin(userId, siteId);
+        return accessContextService.getAccessContext(userId).isSiteAdmin(siteId);
     }
 
     /**
@@ -533,14 +809,9 @@ public class EventService {
             return true;
         }
         
-        // Global admins can access all events
-        if (keycloakService.hasGlobalAdminRole(userId)) {
-            return true;
-        }
-        
-        // Check if user is in the event resource's site
+        // Global admins can access all events, other users only events in their sites
         String siteId = event.getResource().getSiteId();
-        return keycloakService.isUserInGroup(userId, siteId);
+        return accessContextService.getAccessContext(userId).canAccessSite(siteId);
     }
 
     /**
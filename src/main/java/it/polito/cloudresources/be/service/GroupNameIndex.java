@@ -0,0 +1,63 @@
+package it.polito.cloudresources.be.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Index of the groups by name, used by {@link KeycloakService#getGroupByName(String)} when the realm
+ * directory is not available. It is fed by every full group listing and by single lookups, and is
+ * invalidated together with the group caches, see {@link KeycloakCacheInvalidator#evictGroup}.
+ * Unlike a cache it is also effective for the lookups made from within KeycloakService itself.
+ * Only existing groups are indexed, a miss always goes to Keycloak; entries expire so that
+ * renames made while admin events are not received are eventually seen.
+ */
+@Component
+public class GroupNameIndex {
+
+    private final Cache<String, GroupRepresentation> groupsByName;
+
+    public GroupNameIndex(@Value("${keycloak.group-name-index.ttl-ms:600000}") long ttlMs,
+                          @Value("${keycloak.group-name-index.max-size:10000}") long maxSize) {
+        this.groupsByName = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    public Optional<GroupRepresentation> find(String groupName) {
+        return groupName == null ? Optional.empty() : Optional.ofNullable(groupsByName.getIfPresent(groupName));
+    }
+
+    public void put(GroupRepresentation group) {
+        if (group != null && group.getName() != null) {
+            groupsByName.put(group.getName(), group);
+        }
+    }
+
+    /**
+     * Replaces the index with a complete listing of the groups
+     */
+    public void putAll(Collection<GroupRepresentation> groups) {
+        Map<String, GroupRepresentation> listed = new HashMap<>();
+        groups.stream().filter(group -> group.getName() != null).forEach(group -> listed.put(group.getName(), group));
+        groupsByName.asMap().keySet().retainAll(listed.keySet());
+        groupsByName.putAll(listed);
+    }
+
+    /**
+     * Removes a group, whatever name it is indexed under, and the given names
+     */
+    public void remove(String groupId, Collection<String> groupNames) {
+        groupsByName.invalidateAll(groupNames);
+        groupsByName.asMap().values().removeIf(group -> groupId.equals(group.getId()));
+    }
+}
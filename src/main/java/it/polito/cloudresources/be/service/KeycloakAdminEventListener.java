@@ -0,0 +1,231 @@
+package it.polito.cloudresources.be.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Polls the admin events of the realm and applies each change to the caches and the realm directory,
+ * so that changes made outside this application (e.g. in the Keycloak admin console) are picked up
+ * without waiting for entries to expire. Only the entries affected by an event are evicted.
+ *
+ * Requires admin events to be enabled on the realm and the service account to be allowed to view them;
+ * role mapping changes are handled precisely only if the events include the representation.
+ */
+@Component
+@Profile("!dev")
+@ConditionalOnProperty(prefix = "keycloak.admin-events", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class KeycloakAdminEventListener {
+
+    private final KeycloakService keycloakService;
+    private final KeycloakCacheInvalidator cacheInvalidator;
+    private final ObjectProvider<RealmDirectory> realmDirectoryProvider;
+    private final ObjectMapper objectMapper;
+
+    @Value("${keycloak.admin-events.page-size:100}")
+    private int pageSize;
+
+    // Events older than this have been handled; only changes made after startup are of interest
+    private long lastEventTime = System.currentTimeMillis();
+    // Events already handled that happened exactly at lastEventTime
+    private Set<String> handledAtLastEventTime = new HashSet<>();
+
+    @Scheduled(initialDelayString = "${keycloak.admin-events.poll-interval-ms:15000}",
+            fixedDelayString = "${keycloak.admin-events.poll-interval-ms:15000}")
+    public void poll() {
+        List<AdminEventRepresentation> events;
+        try {
+            events = fetchNewEvents(keycloakService.getRealmResource());
+        } catch (Exception e) {
+            log.warn("Could not fetch Keycloak admin events: {}", e.getMessage());
+            return;
+        }
+
+        for (AdminEventRepresentation event : events) {
+            try {
+                handle(event);
+            } catch (Exception e) {
+                log.warn("Error handling Keycloak admin event {} {}: {}",
+                        event.getOperationType(), event.getResourcePath(), e.getMessage());
+            }
+            if (event.getTime() > lastEventTime) {
+                lastEventTime = event.getTime();
+                handledAtLastEventTime = new HashSet<>();
+            }
+            handledAtLastEventTime.add(eventKey(event));
+        }
+        if (!events.isEmpty()) {
+            log.debug("Handled {} Keycloak admin events", events.size());
+        }
+    }
+
+    /**
+     * Returns the events not handled yet, oldest first. Keycloak returns the newest events first and
+     * only filters by day, so pages are read until an already handled event is reached.
+     */
+    private List<AdminEventRepresentation> fetchNewEvents(RealmResource realm) {
+        String dateFrom = LocalDate.ofInstant(Instant.ofEpochMilli(lastEventTime), ZoneOffset.UTC)
+                .minusDays(1).toString(); // Keycloak compares in its own time zone
+        List<AdminEventRepresentation> newEvents = new ArrayList<>();
+
+        int first = 0;
+        boolean reachedHandled = false;
+        while (!reachedHandled) {
+            List<AdminEventRepresentation> page = realm.getAdminEvents(
+                    null, null, null, null, null, null, dateFrom, null, first, pageSize);
+            for (AdminEventRepresentation event : page) {
+                if (event.getTime() < lastEventTime) {
+                    reachedHandled = true;
+                    break;
+                }
+                if (event.getTime() > lastEventTime || !handledAtLastEventTime.contains(eventKey(event))) {
+                    newEvents.add(event);
+                }
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            first += page.size();
+        }
+
+        Collections.reverse(newEvents);
+        return newEvents;
+    }
+
+    private String eventKey(AdminEventRepresentation event) {
+        return event.getTime() + " " + event.getOperationType() + " " + event.getResourcePath();
+    }
+
+    /**
+     * Applies a single admin event
+     */
+    void handle(AdminEventRepresentation event) {
+        String resourceType = Objects.toString(event.getResourceType(), "");
+        String[] path = Objects.toString(event.getResourcePath(), "").split("/");
+        boolean deleted = "DELETE".equals(event.getOperationType());
+        log.debug("Keycloak admin event: {} {} {}", event.getOperationType(), resourceType, event.getResourcePath());
+
+        switch (resourceType) {
+            // users/{userId}
+            case "USER" -> {
+                if (path.length == 2 && "users".equals(path[0])) {
+                    userChanged(path[1], deleted);
+                }
+            }
+            // users/{userId}/groups/{groupId}
+            case "GROUP_MEMBERSHIP" -> {
+                if (path.length == 4 && "users".equals(path[0])) {
+                    membershipChanged(path[1], path[3], deleted);
+                }
+            }
+            // groups/{groupId}
+            case "GROUP" -> {
+                if (path.length == 2 && "groups".equals(path[0])) {
+                    groupChanged(path[1], event.getRepresentation(), deleted);
+                }
+            }
+            // users/{userId}/role-mappings/realm
+            case "REALM_ROLE_MAPPING" -> {
+                if (path.length >= 3 && "users".equals(path[0])) {
+                    roleMappingChanged(path[1], event.getRepresentation());
+                }
+            }
+            // roles/{roleName}
+            case "REALM_ROLE" -> {
+                if (path.length == 2 && "roles".equals(path[0]) && deleted) {
+                    cacheInvalidator.evictRole(path[1]);
+                    updateDirectory(directory -> directory.removeRole(path[1]));
+                }
+            }
+            default -> {
+                // Not cached
+            }
+        }
+    }
+
+    private void userChanged(String userId, boolean deleted) {
+        cacheInvalidator.evictUser(userId);
+        if (deleted) {
+            cacheInvalidator.evictUserRoles(userId);
+            cacheInvalidator.evictUserMemberships(userId);
+            updateDirectory(directory -> directory.removeUser(userId));
+        } else {
+            updateDirectory(directory -> directory.refreshUser(userId));
+        }
+    }
+
+    private void membershipChanged(String userId, String groupId, boolean removed) {
+        cacheInvalidator.evictMembership(userId, groupId);
+        if (removed) {
+            updateDirectory(directory -> directory.removeGroupMember(userId, groupId));
+        } else {
+            updateDirectory(directory -> directory.addGroupMember(userId, groupId));
+        }
+    }
+
+    private void groupChanged(String groupId, String representation, boolean deleted) {
+        String name = readRepresentation(representation, GroupRepresentation.class)
+                .map(GroupRepresentation::getName)
+                .orElse(null);
+        if (name != null) {
+            cacheInvalidator.evictGroup(groupId, name);
+        } else {
+            cacheInvalidator.evictGroup(groupId);
+        }
+        if (deleted) {
+            cacheInvalidator.evictGroupMemberships(groupId);
+            updateDirectory(directory -> directory.removeGroup(groupId));
+        } else {
+            updateDirectory(directory -> directory.refreshGroup(groupId));
+        }
+    }
+
+    private void roleMappingChanged(String userId, String representation) {
+        cacheInvalidator.evictUserRoles(userId);
+        Optional<RoleRepresentation[]> roles = readRepresentation(representation, RoleRepresentation[].class);
+        if (roles.isPresent()) {
+            cacheInvalidator.evictRoleMembers(Arrays.stream(roles.get()).map(RoleRepresentation::getName).toList());
+        } else {
+            // Without the representation we cannot tell which roles were mapped
+            cacheInvalidator.evictAllRoleMembers();
+        }
+        updateDirectory(directory -> directory.refreshUser(userId));
+    }
+
+    private <T> Optional<T> readRepresentation(String representation, Class<T> type) {
+        if (representation == null || representation.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(objectMapper.readValue(representation, type));
+        } catch (Exception e) {
+            log.debug("Could not parse admin event representation as {}: {}", type.getSimpleName(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void updateDirectory(Consumer<RealmDirectory> update) {
+        RealmDirectory directory = realmDirectoryProvider.getIfAvailable();
+        if (directory != null && directory.isReady()) {
+            update.accept(directory);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package it.polito.cloudresources.be.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Guards every call to the Keycloak admin API with a bulkhead, a per-operation timeout and a circuit breaker,
+ * all configured under the {@code keycloak} instances of the resilience4j properties.
+ *
+ * The admin client resources are wrapped in proxies: navigating them (e.g. {@code realm.users().get(id)})
+ * is local, while every other method performs an HTTP request and is guarded. Operations are named after
+ * the resource interface and method, e.g. {@code UsersResource.list}; a time limiter instance with that
+ * name overrides the default timeout, so that bulk reads can be given more time than single lookups.
+ *
+ * When Keycloak is slow or down, calls fail fast with a {@link KeycloakUnavailableException} instead of
+ * tying up request threads, while reads keep being answered from the stale data still held by the realm
+ * directory and the refresh-ahead caches. Metrics and the circuit breaker health indicator are provided
+ * by the resilience4j Spring Boot integration.
+ */
+@Component
+@Profile("!dev")
+@Slf4j
+public class KeycloakAdminGuard {
+
+    public static final String INSTANCE_NAME = "keycloak";
+
+    private static final String RESOURCE_PACKAGE = RealmResource.class.getPackageName();
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final TimeLimiter defaultTimeLimiter;
+    private final Map<String, TimeLimiter> timeLimiters = new ConcurrentHashMap<>();
+
+    // Calls run on their own virtual thread so that the caller can stop waiting for them; interrupting
+    // a virtual thread blocked on a socket closes it, which releases the connection on timeout
+    private final ExecutorService callExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public KeycloakAdminGuard(CircuitBreakerRegistry circuitBreakerRegistry,
+                              BulkheadRegistry bulkheadRegistry,
+                              TimeLimiterRegistry timeLimiterRegistry) {
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(INSTANCE_NAME);
+        this.bulkhead = bulkheadRegistry.bulkhead(INSTANCE_NAME);
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.defaultTimeLimiter = timeLimiterRegistry.timeLimiter(INSTANCE_NAME);
+
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Keycloak circuit breaker: {}", event.getStateTransition()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns a view of the realm resource whose remote calls are guarded
+     */
+    public RealmResource guard(RealmResource realm) {
+        return wrap(RealmResource.class, realm);
+    }
+
+    /**
+     * Tells whether calls are currently let through, i.e. the circuit is not open
+     */
+    public boolean isCallPermitted() {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T wrap(Class<T> type, T target) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+            Class<?> returnType = method.getReturnType();
+            if (isResource(returnType)) {
+                Object resource = invokeTarget(target, method, args);
+                return resource != null ? wrap((Class<Object>) returnType, resource) : null;
+            }
+            return call(operationName(type, method), () -> invokeTarget(target, method, args));
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static boolean isResource(Class<?> type) {
+        return type.isInterface() && RESOURCE_PACKAGE.equals(type.getPackageName());
+    }
+
+    private static String operationName(Class<?> type, Method method) {
+        return type.getSimpleName() + "." + method.getName();
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Performs a remote call: it is rejected if the circuit is open, waits for a free slot in the bulkhead
+     * and is abandoned after the timeout of its operation
+     */
+    private Object call(String operation, Callable<Object> remoteCall) throws Exception {
+        TimeLimiter timeLimiter = timeLimiters.computeIfAbsent(operation,
+                name -> timeLimiterRegistry.find(name).orElse(defaultTimeLimiter));
+        Callable<Object> limited = () -> timeLimiter.executeFutureSupplier(
+                () -> callExecutor.submit(Bulkhead.decorateCallable(bulkhead, remoteCall)));
+        try {
+            return circuitBreaker.executeCallable(limited);
+        } catch (CallNotPermittedException | BulkheadFullException | TimeoutException e) {
+            log.debug("Keycloak call {} not completed: {}", operation, e.getMessage());
+            throw new KeycloakUnavailableException(operation, e);
+        }
+    }
+}
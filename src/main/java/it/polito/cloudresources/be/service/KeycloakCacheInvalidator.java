@@ -0,0 +1,188 @@
+package it.polito.cloudresources.be.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+import static it.polito.cloudresources.be.service.KeycloakService.*;
+
+/**
+ * Key-precise evictions of the Keycloak caches, used both by our own mutations in {@link KeycloakService}
+ * and for the admin events received from Keycloak.
+ * Entries whose keys cannot be derived from the change (e.g. the by-username entry of a user, or the member
+ * lists containing a user) are found by scanning the keys and values of the affected cache only.
+ * Without a cache manager (dev profile) only the group name index is maintained.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class KeycloakCacheInvalidator {
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+    private final GroupNameIndex groupNameIndex;
+
+    /**
+     * A user was created, updated or deleted: evicts every cached representation of the user
+     */
+    public void evictUser(String userId) {
+        evict(USER_BY_ID_CACHE, userId);
+        evictIf(USER_ATTRIBUTES_CACHE, (key, value) -> key.toString().startsWith(userId + "_"));
+        clear(USERS_CACHE); // single entry holding the full user list
+        evictIf(USER_BY_USERNAME_CACHE, (key, value) -> refersToUser(value, userId));
+        evictIf(USER_BY_EMAIL_CACHE, (key, value) -> refersToUser(value, userId));
+        evictIf(USERS_IN_GROUP_CACHE, (key, value) -> refersToUser(value, userId));
+        evictIf(USER_BY_ROLE_CACHE, (key, value) -> refersToUser(value, userId));
+    }
+
+    /**
+     * The realm roles of a user changed: evicts the roles and everything derived from them
+     */
+    public void evictUserRoles(String userId) {
+        evict(USER_ROLES_CACHE, userId);
+        evict(USER_GLOBAL_ADMIN_CACHE, userId);
+        evict(USER_ADMIN_GROUPS_CACHE, userId);
+        evict(USER_ADMIN_GROUP_IDS_CACHE, userId);
+        evictIf(USER_SITE_ADMIN_STATUS, (key, value) -> key.toString().startsWith(userId + "_"));
+    }
+
+    /**
+     * A user joined or left a group
+     */
+    public void evictMembership(String userId, String groupId) {
+        evict(GROUP_MEMBERS_CACHE, groupId + "_" + userId);
+        evict(USERS_IN_GROUP_CACHE, groupId);
+        evict(GROUP_MEMBER_COUNT_CACHE, groupId);
+        evict(USER_GROUPS_CACHE, userId);
+        evict(USER_SITES_CACHE, userId);
+    }
+
+    /**
+     * Any number of the memberships of a user changed
+     */
+    public void evictUserMemberships(String userId) {
+        evictIf(GROUP_MEMBERS_CACHE, (key, value) -> key.toString().endsWith("_" + userId));
+        evictIf(USERS_IN_GROUP_CACHE, (key, value) -> refersToUser(value, userId));
+        clear(GROUP_MEMBER_COUNT_CACHE); // the groups of the user are not known
+        evict(USER_GROUPS_CACHE, userId);
+        evict(USER_SITES_CACHE, userId);
+    }
+
+    /**
+     * A group was created, updated or deleted. The names given (e.g. the name of a new group) are
+     * removed from the name index in addition to the entries holding the group.
+     */
+    public void evictGroup(String groupId, String... groupNames) {
+        Set<String> names = new HashSet<>(Arrays.asList(groupNames));
+        evict(GROUP_BY_ID_CACHE, groupId);
+        clear(GROUPS_CACHE); // single entry holding the full group list
+        groupNameIndex.remove(groupId, names);
+        evictIf(USER_GROUPS_CACHE, (key, value) -> refersToGroup(value, groupId));
+    }
+
+    /**
+     * A group was deleted: evicts all memberships and site admin statuses involving it
+     */
+    public void evictGroupMemberships(String groupId) {
+        evictIf(GROUP_MEMBERS_CACHE, (key, value) -> key.toString().startsWith(groupId + "_"));
+        evict(USERS_IN_GROUP_CACHE, groupId);
+        evict(GROUP_MEMBER_COUNT_CACHE, groupId);
+        evictIf(USER_GROUPS_CACHE, (key, value) -> refersToGroup(value, groupId));
+        evictIf(USER_SITES_CACHE, (key, value) -> value instanceof Collection<?> ids && ids.contains(groupId));
+        evictIf(USER_ADMIN_GROUP_IDS_CACHE, (key, value) -> value instanceof Collection<?> ids && ids.contains(groupId));
+        evictIf(USER_SITE_ADMIN_STATUS, (key, value) -> key.toString().endsWith("_" + groupId));
+    }
+
+    /**
+     * The members of the given roles changed
+     */
+    public void evictRoleMembers(Collection<String> roleNames) {
+        roleNames.forEach(roleName -> evict(USER_BY_ROLE_CACHE, roleName.toLowerCase()));
+    }
+
+    /**
+     * Role members changed in a way that cannot be attributed to specific roles
+     */
+    public void evictAllRoleMembers() {
+        clear(USER_BY_ROLE_CACHE);
+    }
+
+    /**
+     * A role was deleted: evicts its member list and the roles of the users known to hold it
+     */
+    public void evictRole(String roleName) {
+        evictRoleMembers(List.of(roleName));
+        Cache roles = cache(USER_ROLES_CACHE);
+        if (roles != null && roles.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+            List<String> holders = nativeCache.asMap().entrySet().stream()
+                    .filter(entry -> entry.getValue() instanceof Collection<?> names && names.contains(roleName))
+                    .map(entry -> entry.getKey().toString())
+                    .toList();
+            holders.forEach(this::evictUserRoles);
+        } else {
+            clear(USER_ROLES_CACHE);
+            clear(USER_GLOBAL_ADMIN_CACHE);
+            clear(USER_ADMIN_GROUPS_CACHE);
+            clear(USER_ADMIN_GROUP_IDS_CACHE);
+            clear(USER_SITE_ADMIN_STATUS);
+        }
+    }
+
+    private static boolean refersToUser(Object value, String userId) {
+        if (value instanceof UserRepresentation user) {
+            return userId.equals(user.getId());
+        }
+        return value instanceof Collection<?> users && users.stream()
+                .anyMatch(user -> user instanceof UserRepresentation u && userId.equals(u.getId()));
+    }
+
+    private static boolean refersToGroup(Object value, String groupId) {
+        if (value instanceof GroupRepresentation group) {
+            return groupId.equals(group.getId());
+        }
+        return value instanceof Collection<?> groups && groups.stream()
+                .anyMatch(group -> group instanceof GroupRepresentation g && groupId.equals(g.getId()));
+    }
+
+    private Cache cache(String cacheName) {
+        CacheManager cacheManager = cacheManagerProvider.getIfAvailable();
+        return cacheManager != null ? cacheManager.getCache(cacheName) : null;
+    }
+
+    private void evict(String cacheName, Object key) {
+        Cache cache = cache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+
+    private void clear(String cacheName) {
+        Cache cache = cache(cacheName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Evicts the entries matching the given key/value predicate, or the whole cache if its entries cannot be scanned
+     */
+    private void evictIf(String cacheName, BiPredicate<Object, Object> matcher) {
+        Cache cache = cache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+            nativeCache.asMap().entrySet().removeIf(entry -> matcher.test(entry.getKey(), entry.getValue()));
+        } else {
+            log.debug("Cache {} cannot be scanned, clearing it", cacheName);
+            cache.clear();
+        }
+    }
+}
@@ -1,31 +1,47 @@
 package it.polito.cloudresources.be.service;
 
+import it.polito.cloudresources.be.dto.MembershipJobDTO;
 import it.polito.cloudresources.be.dto.users.UserDTO;
+import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
+import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.Response; // Correct import for Keycloak 16.1.1
 import lombok.extern.slf4j.Slf4j;
 
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.GroupResource;
 import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleResource;
 import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Profile;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 
 import javax.ws.rs.NotFoundException; // Added for Keycloak 16.1.1 compatibility
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +55,8 @@ public class KeycloakService {
 
     public static final String ATTR_SSH_KEY = "ssh_key";
     public static final String ATTR_AVATAR = "avatar";
+    public static final String ROLE_GLOBAL_ADMIN = "global_admin";
+    public static final String SITE_ADMIN_ROLE_SUFFIX = "_site_admin";
 
     // Cache names
     public static final String USERS_CACHE = "keycloak_users";
@@ -50,13 +68,18 @@ public class KeycloakService {
     public static final String USER_GROUPS_CACHE = "keycloak_user_groups";
     public static final String GROUPS_CACHE = "keycloak_groups";
     public static final String GROUP_BY_ID_CACHE = "keycloak_groups_by_id";
-    public static final String GROUP_BY_NAME_CACHE = "keycloak_groups_by_name";
     public static final String GROUP_MEMBERS_CACHE = "keycloak_group_members";
     public static final String USERS_IN_GROUP_CACHE = "keycloak_users_in_group";
     public static final String USER_ADMIN_GROUPS_CACHE = "keycloak_user_admin_groups";
     public static final String USER_SITES_CACHE = "keycloak_user_sites";
     public static final String USER_BY_ROLE_CACHE = "keycloak_users_by_role";
     public static final String USER_SITE_ADMIN_STATUS = "keycloak_site_admin_status";
+    public static final String USER_GLOBAL_ADMIN_CACHE = "keycloak_user_global_admin";
+    public static final String USER_ADMIN_GROUP_IDS_CACHE = "keycloak_user_admin_group_ids";
+    public static final String GROUP_MEMBER_COUNT_CACHE = "keycloak_group_member_counts";
+
+    // Caches whose entries can be reloaded in the background, see reloadCacheEntry
+    public static final Set<String> REFRESHABLE_CACHES = Set.of(USER_ROLES_CACHE, GROUP_BY_ID_CACHE);
 
     @Value("${keycloak.auth-server-url}")
     private String authServerUrl;
@@ -70,24 +93,176 @@ public class KeycloakService {
     @Value("${keycloak.credentials.secret}")
     private String clientSecret;
 
+    @Value("${keycloak.admin-client.connection-pool-size:20}")
+    private int connectionPoolSize;
+
+    @Value("${keycloak.admin-client.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${keycloak.admin-client.read-timeout-ms:10000}")
+    private long readTimeoutMs;
+
+    @Value("${keycloak.admin-client.connection-ttl-ms:60000}")
+    private long connectionTtlMs;
+
+    @Value("${keycloak.admin-client.token-min-validity-seconds:30}")
+    private long tokenMinValiditySeconds;
+
+    @Value("${keycloak.admin-client.page-size:500}")
+    private int pageSize;
+
+    @Value("${keycloak.admin-client.bulk-lookup-threshold:20}")
+    private int bulkLookupThreshold;
+
+    @Value("${keycloak.admin-client.lookup-concurrency:8}")
+    private int lookupConcurrency;
+
+    // Shared admin client, created on first use and closed on shutdown
+    private volatile Keycloak keycloakClient;
+
+    // In-memory mirror of the realm used to answer reads, null when disabled
+    private RealmDirectory realmDirectory;
+
+    @Autowired(required = false)
+    public void setRealmDirectory(RealmDirectory realmDirectory) {
+        this.realmDirectory = realmDirectory;
+    }
+
+    // Bulkhead, timeouts and circuit breaker around the admin calls, null when not configured
+    private KeycloakAdminGuard adminGuard;
+
+    @Autowired(required = false)
+    public void setAdminGuard(KeycloakAdminGuard adminGuard) {
+        this.adminGuard = adminGuard;
+    }
+
+    // Parallel membership changes over many users or groups
+    private BulkMembershipExecutor bulkMembershipExecutor;
+
+    @Autowired
+    public void setBulkMembershipExecutor(BulkMembershipExecutor bulkMembershipExecutor) {
+        this.bulkMembershipExecutor = bulkMembershipExecutor;
+    }
+
+    // Groups by name, kept consistent by the cache invalidator
+    private GroupNameIndex groupNameIndex;
+
+    @Autowired
+    public void setGroupNameIndex(GroupNameIndex groupNameIndex) {
+        this.groupNameIndex = groupNameIndex;
+    }
+
+    // Key-precise cache evictions for our own mutations
+    private KeycloakCacheInvalidator cacheInvalidator;
+
+    @Autowired
+    public void setCacheInvalidator(KeycloakCacheInvalidator cacheInvalidator) {
+        this.cacheInvalidator = cacheInvalidator;
+    }
+
+    // Caches read and fed directly by the bulk lookups, which cannot go through @Cacheable
+    private CacheManager cacheManager;
+
+    @Autowired(required = false)
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
     /**
-     * Creates an admin Keycloak client
+     * Returns the shared admin Keycloak client, creating it on first use.
+     * The client keeps a bounded HTTP connection pool and reuses its access token,
+     * which is renewed when it gets within the configured validity window of expiry.
      */
     protected Keycloak getKeycloakClient() {
-        return KeycloakBuilder.builder()
+        Keycloak client = keycloakClient;
+        if (client == null) {
+            synchronized (this) {
+                client = keycloakClient;
+                if (client == null) {
+                    client = buildKeycloakClient();
+                    keycloakClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Builds the admin Keycloak client backed by a pooled RESTEasy client
+     */
+    private Keycloak buildKeycloakClient() {
+        log.info("Creating Keycloak admin client for realm '{}' (pool size: {})", realm, connectionPoolSize);
+
+        ResteasyClient resteasyClient = ((ResteasyClientBuilder) ClientBuilder.newBuilder())
+                .connectionPoolSize(connectionPoolSize)
+                .maxPooledPerRoute(connectionPoolSize)
+                .connectionTTL(connectionTtlMs, TimeUnit.MILLISECONDS)
+                .establishConnectionTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .socketTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        Keycloak client = KeycloakBuilder.builder()
                 .serverUrl(authServerUrl)
                 .realm(realm)
                 .clientId(clientId)
                 .clientSecret(clientSecret)
                 .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
+                .resteasyClient(resteasyClient)
                 .build();
+
+        // Renew the token before it expires instead of failing the first call after expiry
+        client.tokenManager().setMinTokenValidity(tokenMinValiditySeconds);
+        return client;
+    }
+
+    /**
+     * Releases the pooled connections of the admin client on shutdown
+     */
+    @PreDestroy
+    public void closeKeycloakClient() {
+        Keycloak client = keycloakClient;
+        if (client != null) {
+            keycloakClient = null;
+            try {
+                client.close();
+                log.info("Keycloak admin client closed");
+            } catch (Exception e) {
+                log.warn("Error closing Keycloak admin client: {}", e.getMessage());
+            }
+        }
     }
 
     /**
-     * Get the realm resource
+     * Get the realm resource, whose remote calls go through the admin guard
      */
     protected RealmResource getRealmResource() {
-        return getKeycloakClient().realm(realm);
+        RealmResource realmResource = getKeycloakClient().realm(realm);
+        return adminGuard != null ? adminGuard.guard(realmResource) : realmResource;
+    }
+
+    /**
+     * Returns the realm directory if it has been loaded, null if reads must go to Keycloak
+     */
+    private RealmDirectory readyDirectory() {
+        RealmDirectory directory = realmDirectory;
+        return directory != null && directory.isReady() ? directory : null;
+    }
+
+    private Cache cache(String cacheName) {
+        return cacheManager != null ? cacheManager.getCache(cacheName) : null;
+    }
+
+    /**
+     * Applies one of our own changes to the realm directory; a failure only leaves it stale until the next sync
+     */
+    private void updateDirectory(Consumer<RealmDirectory> update) {
+        if (realmDirectory != null) {
+            try {
+                update.accept(realmDirectory);
+            } catch (Exception e) {
+                log.warn("Could not update realm directory: {}", e.getMessage());
+            }
+        }
     }
 
     /**
@@ -95,10 +270,15 @@ public class KeycloakService {
      */
     @Cacheable(value = USERS_CACHE, unless = "#result.isEmpty()")
     public List<UserRepresentation> getUsers() {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null) {
+            return directory.getUsers();
+        }
         try {
             log.debug("Cache miss: Fetching all users from Keycloak");
             return getRealmResource().users().list();
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching users from Keycloak", e);
             return Collections.emptyList();
         }
@@ -109,6 +289,11 @@ public class KeycloakService {
      */
     @Cacheable(value = USER_BY_USERNAME_CACHE, key = "#username", unless = "#result == null")
     public Optional<UserRepresentation> getUserByUsername(String username) {
+        RealmDirectory directory = readyDirectory();
+        Optional<UserRepresentation> mirrored = directory != null ? directory.findUserByUsername(username) : Optional.empty();
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
         try {
             log.debug("Cache miss: Fetching user by username '{}'", username);
             // Keycloak 16.1.1 admin client does not have search(username, exact)
@@ -116,6 +301,7 @@ public class KeycloakService {
             List<UserRepresentation> users = getRealmResource().users().search(username, null, null, null, 0, 1);
             return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching user from Keycloak by username", e);
             return Optional.empty();
         }
@@ -126,11 +312,17 @@ public class KeycloakService {
      */
     @Cacheable(value = USER_BY_EMAIL_CACHE, key = "#email", unless = "#result == null")
     public Optional<UserRepresentation> getUserByEmail(String email) {
+        RealmDirectory directory = readyDirectory();
+        Optional<UserRepresentation> mirrored = directory != null ? directory.findUserByEmail(email) : Optional.empty();
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
         try {
             log.debug("Cache miss: Fetching user by email '{}'", email);
             List<UserRepresentation> users = getRealmResource().users().search(null, null, null, email, 0, 1);
             return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching user from Keycloak by email", e);
             return Optional.empty();
         }
@@ -139,18 +331,97 @@ public class KeycloakService {
     /**
      * Get a user by ID
      */
-    @Cacheable(value = USER_BY_ID_CACHE, key = "#id", unless = "#result == null")
+    @Cacheable(value = USER_BY_ID_CACHE, key = "#id", sync = true)
     public Optional<UserRepresentation> getUserById(String id) {
+        RealmDirectory directory = readyDirectory();
+        Optional<UserRepresentation> mirrored = directory != null ? directory.findUserById(id) : Optional.empty();
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
         try {
             log.debug("Cache miss: Fetching user by ID '{}'", id);
             UserRepresentation user = getRealmResource().users().get(id).toRepresentation();
             return Optional.ofNullable(user);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching user from Keycloak", e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Resolves many users at once, e.g. the owners of a list of events, so that the cost depends on the
+     * number of distinct users rather than on the number of items referring to them.
+     * Users are taken from the realm directory when loaded, then from the cache of {@link #getUserById}.
+     * The ones still missing are fetched one by one if they are few, otherwise the user list is read page
+     * by page until all of them have been found; the users fetched are added to the cache.
+     * Unknown IDs are absent from the result.
+     *
+     * @param ids the user IDs, duplicates and nulls are ignored
+     * @return the users found, keyed by ID
+     */
+    public Map<String, UserRepresentation> getUsersByIds(Collection<String> ids) {
+        Set<String> missing = new HashSet<>(ids);
+        missing.remove(null);
+        Map<String, UserRepresentation> users = new HashMap<>();
+
+        RealmDirectory directory = readyDirectory();
+        if (directory != null) {
+            users.putAll(directory.findUsersByIds(missing));
+            missing.removeAll(users.keySet());
+        }
+        Cache userCache = cache(USER_BY_ID_CACHE);
+        if (userCache != null) {
+            for (Iterator<String> it = missing.iterator(); it.hasNext(); ) {
+                String id = it.next();
+                UserRepresentation cached = userCache.get(id, UserRepresentation.class);
+                if (cached != null) {
+                    users.put(id, cached);
+                    it.remove();
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return users;
+        }
+
+        log.debug("Fetching {} users from Keycloak", missing.size());
+        Consumer<UserRepresentation> fetched = user -> {
+            users.put(user.getId(), user);
+            if (userCache != null) {
+                userCache.put(user.getId(), user);
+            }
+        };
+        try {
+            UsersResource usersResource = getRealmResource().users();
+            if (missing.size() <= bulkLookupThreshold) {
+                for (String id : missing) {
+                    try {
+                        fetched.accept(usersResource.get(id).toRepresentation());
+                    } catch (NotFoundException e) {
+                        log.debug("User {} does not exist", id);
+                    }
+                }
+            } else {
+                int first = 0;
+                List<UserRepresentation> page;
+                do {
+                    page = usersResource.list(first, pageSize);
+                    for (UserRepresentation user : page) {
+                        if (missing.remove(user.getId())) {
+                            fetched.accept(user);
+                        }
+                    }
+                    first += page.size();
+                } while (page.size() == pageSize && !missing.isEmpty());
+            }
+        } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
+            log.error("Error fetching users from Keycloak", e);
+        }
+        return users;
+    }
+
     /**
      * Creates a new user in Keycloak from a UserDTO
      *
@@ -160,10 +431,6 @@ public class KeycloakService {
      * @return the ID of the created user, or null if creation failed
      */
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = USERS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_BY_ROLE_CACHE, allEntries = true)
-    })
     public String createUser(UserDTO userDTO, String password) {
         try {
             log.debug("Attempting to create user: username={}, email={}, firstName={}, lastName={}",
@@ -194,6 +461,9 @@ public class KeycloakService {
                 }
             }
 
+            updateDirectory(directory -> directory.refreshUser(userId));
+            cacheInvalidator.evictUser(userId);
+            cacheInvalidator.evictUserMemberships(userId);
             return userId;
         } catch (Exception e) {
             log.error("Error creating user in Keycloak", e);
@@ -205,15 +475,6 @@ public class KeycloakService {
      * Update an existing user in Keycloak
      */
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = USER_BY_ID_CACHE, key = "#userId"),
-            @CacheEvict(value = USERS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_ATTRIBUTES_CACHE, key = "#userId + '_*'"),
-            @CacheEvict(value = USER_ROLES_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_BY_USERNAME_CACHE, allEntries = true),
-            @CacheEvict(value = USER_BY_EMAIL_CACHE, allEntries = true),
-            @CacheEvict(value = USER_BY_ROLE_CACHE, allEntries = true)
-    })
     public boolean updateUser(String userId, Map<String, Object> attributes) {
         try {
             UserResource userResource = getRealmResource().users().get(userId);
@@ -325,57 +586,159 @@ public class KeycloakService {
             }
 
             log.info("User updated in Keycloak: {}", userId);
+            updateDirectory(directory -> directory.refreshUser(userId));
             return true;
         } catch (Exception e) {
             log.error("Error updating user in Keycloak", e);
             log.error(e.getMessage());
             return false;
+        } finally {
+            // Also after a failure, part of the changes may have been applied
+            cacheInvalidator.evictUser(userId);
+            cacheInvalidator.evictUserRoles(userId);
         }
     }
 
     /**
      * Delete a user from Keycloak
      */
-    @Caching(evict = {
-            @CacheEvict(value = USER_BY_ID_CACHE, key = "#userId"),
-            @CacheEvict(value = USERS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_ATTRIBUTES_CACHE, key = "#userId + '_*'"),
-            @CacheEvict(value = USER_ROLES_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_GROUPS_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_ADMIN_GROUPS_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_SITES_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_BY_USERNAME_CACHE, allEntries = true),
-            @CacheEvict(value = USER_BY_EMAIL_CACHE, allEntries = true),
-            @CacheEvict(value = USERS_IN_GROUP_CACHE, allEntries = true),
-            @CacheEvict(value = GROUP_MEMBERS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_BY_ROLE_CACHE, allEntries = true)
-    })
     public boolean deleteUser(String userId) {
         try {
             getRealmResource().users().get(userId).remove();
             log.info("User deleted from Keycloak: {}", userId);
+            updateDirectory(directory -> directory.removeUser(userId));
             return true;
         } catch (Exception e) {
             log.error("Error deleting user from Keycloak", e);
             return false;
+        } finally {
+            cacheInvalidator.evictUser(userId);
+            cacheInvalidator.evictUserRoles(userId);
+            cacheInvalidator.evictUserMemberships(userId);
         }
     }
 
     /**
      * Get roles of a user
      */
-    @Cacheable(value = USER_ROLES_CACHE, key = "#userId")
+    @Cacheable(value = USER_ROLES_CACHE, key = "#userId", sync = true)
     public List<String> getUserRoles(String userId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsUser(userId)) {
+            return directory.getUserRoles(userId);
+        }
         try {
             log.debug("Cache miss: Fetching roles for user '{}'", userId);
-            List<RoleRepresentation> roles = getRealmResource().users().get(userId).roles().realmLevel().listAll();
-            return roles.stream().map(RoleRepresentation::getName).toList();
+            return fetchUserRoles(userId);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching user roles from Keycloak", e);
             return Collections.emptyList();
         }
     }
 
+    private List<String> fetchUserRoles(String userId) {
+        List<RoleRepresentation> roles = getRealmResource().users().get(userId).roles().realmLevel().listAll();
+        return roles.stream().map(RoleRepresentation::getName).toList();
+    }
+
+    /**
+     * Fetches the realm roles of each user on virtual threads, at most {@code lookupConcurrency} at a time.
+     * Unknown users are left out; the first other failure cancels the remaining calls and is thrown.
+     */
+    private Map<String, List<String>> fetchUserRolesInParallel(Collection<String> userIds) throws Exception {
+        Map<String, List<String>> rolesByUser = new HashMap<>();
+        Semaphore permits = new Semaphore(lookupConcurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Map<String, Future<List<String>>> futures = new LinkedHashMap<>();
+            for (String userId : userIds) {
+                futures.put(userId, executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return fetchUserRoles(userId);
+                    } catch (NotFoundException e) {
+                        log.debug("User {} does not exist", userId);
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<List<String>>> entry : futures.entrySet()) {
+                try {
+                    List<String> roles = entry.getValue().get();
+                    if (roles != null) {
+                        rolesByUser.put(entry.getKey(), roles);
+                    }
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+        return rolesByUser;
+    }
+
+    /**
+     * Get the roles of many users at once, e.g. to list the members of a site.
+     * Roles are taken from the realm directory when loaded, then from the cache of {@link #getUserRoles}.
+     * The roles of the users still missing are fetched user by user, as {@link #getUserRoles} does, with
+     * at most {@code lookup-concurrency} calls in flight, and cached.
+     *
+     * @param userIds the user IDs
+     * @return the roles of each user, an empty list for users without roles or unknown
+     * @throws KeycloakUnavailableException if the roles could not be read, rather than reporting users without roles
+     */
+    public Map<String, List<String>> getUserRolesByIds(Collection<String> userIds) {
+        Set<String> missing = new HashSet<>(userIds);
+        missing.remove(null);
+        Map<String, List<String>> rolesByUser = new HashMap<>();
+
+        RealmDirectory directory = readyDirectory();
+        if (directory != null) {
+            rolesByUser.putAll(directory.getUserRoles(missing));
+            missing.removeAll(rolesByUser.keySet());
+        }
+        Cache rolesCache = cache(USER_ROLES_CACHE);
+        if (rolesCache != null) {
+            for (Iterator<String> it = missing.iterator(); it.hasNext(); ) {
+                String userId = it.next();
+                List<String> cached = cachedRoles(rolesCache, userId);
+                if (cached != null) {
+                    rolesByUser.put(userId, cached);
+                    it.remove();
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return rolesByUser;
+        }
+
+        log.debug("Fetching roles of {} users from Keycloak", missing.size());
+        try {
+            fetchUserRolesInParallel(missing).forEach((userId, roles) -> {
+                rolesByUser.put(userId, roles);
+                if (rolesCache != null) {
+                    rolesCache.put(userId, roles);
+                }
+            });
+        } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
+            throw new KeycloakUnavailableException("getUserRolesByIds", e);
+        }
+        userIds.stream().filter(Objects::nonNull).forEach(userId -> rolesByUser.putIfAbsent(userId, List.of()));
+        return rolesByUser;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> cachedRoles(Cache rolesCache, String userId) {
+        return (List<String>) rolesCache.get(userId, List.class);
+    }
+
     /**
      * Get specific attribute for a user
      */
@@ -394,6 +757,7 @@ public class KeycloakService {
             }
             return Optional.empty();
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching user attribute from Keycloak", e);
             return Optional.empty();
         }
@@ -451,56 +815,133 @@ public class KeycloakService {
     }
 
     /**
-     * Find users by role
+     * Find users by role. The role name is matched as given, upper-cased and lower-cased,
+     * so results are cached per lower-cased role name.
      */
-    @Cacheable(value = USER_BY_ROLE_CACHE, key = "#roleName")
+    @Cacheable(value = USER_BY_ROLE_CACHE, key = "#roleName.toLowerCase()")
     public List<UserRepresentation> getUsersByRole(String roleName) {
         try {
             log.debug("Cache miss: Fetching users by role '{}'", roleName);
-            List<UserRepresentation> allUsers = getUsers();
-            List<UserRepresentation> usersWithRole = new ArrayList<>();
-            
-            for (UserRepresentation user : allUsers) {
-                List<String> userRoles = getUserRoles(user.getId());
-                if (userRoles.contains(roleName) || userRoles.contains(roleName.toUpperCase()) || 
-                    userRoles.contains(roleName.toLowerCase())) {
-                    usersWithRole.add(user);
-                }
+            RealmDirectory directory = readyDirectory();
+            Map<String, UserRepresentation> usersWithRole = new LinkedHashMap<>();
+            for (String name : roleNameVariants(roleName)) {
+                Stream<UserRepresentation> members = directory != null
+                        ? directory.getRoleMembers(name).stream()
+                        : streamRoleMembers(name);
+                members.forEach(user -> usersWithRole.putIfAbsent(user.getId(), user));
             }
-            
-            return usersWithRole;
+            return new ArrayList<>(usersWithRole.values());
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error finding users by role from Keycloak", e);
             return Collections.emptyList();
         }
     }
 
+    private Set<String> roleNameVariants(String roleName) {
+        return new LinkedHashSet<>(List.of(roleName, roleName.toUpperCase(), roleName.toLowerCase()));
+    }
+
+    /**
+     * Streams the users directly mapped to a realm role, fetching them from the role-members
+     * endpoint one page at a time as the stream is consumed. Empty if the role does not exist.
+     */
+    private Stream<UserRepresentation> streamRoleMembers(String roleName) {
+        RoleResource role = getRealmResource().roles().get(roleName);
+        AtomicInteger first = new AtomicInteger();
+        return Stream.iterate(fetchRoleMembersPage(role, roleName, 0),
+                        page -> !page.isEmpty(),
+                        page -> page.size() < pageSize
+                                ? List.of()
+                                : fetchRoleMembersPage(role, roleName, first.addAndGet(pageSize)))
+                .flatMap(List::stream);
+    }
+
+    private List<UserRepresentation> fetchRoleMembersPage(RoleResource role, String roleName, int first) {
+        try {
+            return new ArrayList<>(role.getRoleUserMembers(first, pageSize));
+        } catch (NotFoundException e) {
+            log.debug("Role {} does not exist", roleName);
+            return Collections.emptyList();
+        }
+    }
+
     @Cacheable(value = GROUPS_CACHE)
     public List<GroupRepresentation> getAllGroups() {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null) {
+            return directory.getGroups();
+        }
         log.debug("Cache miss: Fetching all groups");
-        return getRealmResource().groups().groups();
+        List<GroupRepresentation> groups = getRealmResource().groups().groups();
+        groupNameIndex.putAll(groups);
+        return groups;
     }
     
-    @Cacheable(value = GROUP_BY_ID_CACHE, key = "#groupId"/*,  unless = "#result.isEmpty()" */)
+    @Cacheable(value = GROUP_BY_ID_CACHE, key = "#groupId", sync = true)
     public Optional<GroupRepresentation> getGroupById(String groupId) {
+        RealmDirectory directory = readyDirectory();
+        Optional<GroupRepresentation> mirrored = directory != null ? directory.findGroupById(groupId) : Optional.empty();
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
         try {
             log.debug("Cache miss: Fetching group by ID '{}'", groupId);
             GroupRepresentation group = getRealmResource().groups().group(groupId).toRepresentation();
             return Optional.of(group);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching site", e);
             return Optional.empty();
         }
     }
 
-    @Cacheable(value = GROUP_BY_NAME_CACHE, key = "#groupName"/*,  unless = "#result.isEmpty()" */)
+    /**
+     * Reloads a cached value straight from Keycloak, used to refresh hot entries in the background.
+     * Unlike the cached lookups this does not fall back to an empty result: failures are thrown so
+     * that the cache keeps serving the previous value. Returns null when the entry no longer exists.
+     *
+     * @param cacheName one of {@link #REFRESHABLE_CACHES}
+     * @param key the cache key (user ID or group ID)
+     * @return the value in the form stored by the cache
+     */
+    public Object reloadCacheEntry(String cacheName, Object key) {
+        String id = (String) key;
+        try {
+            return switch (cacheName) {
+                case USER_ROLES_CACHE -> fetchUserRoles(id);
+                case GROUP_BY_ID_CACHE -> getRealmResource().groups().group(id).toRepresentation();
+                default -> throw new IllegalArgumentException("Cache " + cacheName + " cannot be reloaded");
+            };
+        } catch (NotFoundException e) {
+            log.debug("Entry '{}' of cache {} no longer exists in Keycloak", id, cacheName);
+            return null;
+        }
+    }
+
+    /**
+     * Get a site (top-level group) by its exact name, from the realm directory or the name index.
+     * On a miss Keycloak is searched by name, which matches substrings, instead of listing all groups.
+     */
     public Optional<GroupRepresentation> getGroupByName(String groupName) {
+        RealmDirectory directory = readyDirectory();
+        Optional<GroupRepresentation> mirrored = directory != null ? directory.findGroupByName(groupName) : Optional.empty();
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
+        Optional<GroupRepresentation> indexed = groupNameIndex.find(groupName);
+        if (indexed.isPresent()) {
+            return indexed;
+        }
         try {
-            log.debug("Cache miss: Fetching group by name '{}'", groupName);
-            return getRealmResource().groups().groups().stream()
-                    .filter(group -> group.getName().equals(groupName))
+            log.debug("Index miss: Searching group by name '{}'", groupName);
+            Optional<GroupRepresentation> group = getRealmResource().groups().groups(groupName, 0, pageSize, false).stream()
+                    .filter(candidate -> groupName.equals(candidate.getName()))
                     .findFirst();
+            group.ifPresent(groupNameIndex::put);
+            return group;
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error fetching site", e);
             return Optional.empty();
         }
@@ -509,10 +950,6 @@ public class KeycloakService {
     /**
      * Create a site from a GroupRepresentation
      */
-    @Caching(evict = {
-            @CacheEvict(value = GROUPS_CACHE, allEntries = true),
-            @CacheEvict(value = GROUP_BY_NAME_CACHE, allEntries = true)
-    })
     public String setupNewKeycloakGroup(GroupRepresentation group) {
         try {
             Response response = getRealmResource().groups().add(group);
@@ -520,6 +957,8 @@ public class KeycloakService {
                 String locationPath = response.getLocation().getPath();
                 String siteId = locationPath.substring(locationPath.lastIndexOf('/') + 1);
                 log.info("Created group with ID: {}", siteId);
+                updateDirectory(directory -> directory.refreshGroup(siteId));
+                cacheInvalidator.evictGroup(siteId, group.getName());
                 return siteId;
             } else {
                 log.error("Failed to create group. Status: {}", response.getStatus());
@@ -531,17 +970,9 @@ public class KeycloakService {
     }
 
     /**
-     * Creates a new site
+     * Creates a new site. For public sites all the users are added by a background job,
+     * whose progress is available from {@link #getSiteMembershipJob(String)}.
      */
-    @Caching(evict = {        
-        @CacheEvict(value = USERS_CACHE, allEntries = true),
-        @CacheEvict(value = USER_GROUPS_CACHE, allEntries = true),
-        @CacheEvict(value = USER_SITES_CACHE, allEntries = true),
-        @CacheEvict(value = USERS_IN_GROUP_CACHE, allEntries = true),
-        @CacheEvict(value = GROUP_MEMBERS_CACHE, allEntries = true),
-        @CacheEvict(value = GROUPS_CACHE, allEntries = true),
-        @CacheEvict(value = GROUP_BY_NAME_CACHE, allEntries = true)
-    })
     public String setupNewKeycloakGroup(String name, String description, boolean privateSite) {
         GroupRepresentation group = new GroupRepresentation();
         group.setName(name);
@@ -561,24 +992,56 @@ public class KeycloakService {
             log.debug("Creating group in private mode: {}", privateSite);
             if(!privateSite) {
                 //Add all user to the site
-                List<UserRepresentation> allUsers = getUsers();
-                for (UserRepresentation user : allUsers) {
-                    addUserToKeycloakGroup(user.getId(), groupId);
-                }
+                bulkMembershipExecutor.submit(siteMembershipJobId(groupId), "Add all users to site " + name,
+                        listAllUserIds(), userId -> joinGroup(userId, groupId));
             }
         }
 
         return groupId;
     }
+
+    /**
+     * Returns the progress of the job adding all users to a new public site, if recent
+     */
+    public Optional<MembershipJobDTO> getSiteMembershipJob(String groupId) {
+        return bulkMembershipExecutor.getJob(siteMembershipJobId(groupId));
+    }
+
+    private static String siteMembershipJobId(String groupId) {
+        return "site-" + groupId;
+    }
+
+    /**
+     * Lists the IDs of all the users of the realm, reading the user list page by page
+     */
+    private List<String> listAllUserIds() {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null) {
+            return directory.getUsers().stream().map(UserRepresentation::getId).toList();
+        }
+        UsersResource usersResource = getRealmResource().users();
+        List<String> userIds = new ArrayList<>();
+        List<UserRepresentation> page;
+        do {
+            page = usersResource.list(userIds.size(), pageSize);
+            page.forEach(user -> userIds.add(user.getId()));
+        } while (page.size() == pageSize);
+        return userIds;
+    }
+
+    /**
+     * Adds a user to a group without checking the current membership first, joining is idempotent.
+     * Failures are thrown so that bulk jobs can retry them.
+     */
+    private void joinGroup(String userId, String groupId) {
+        getRealmResource().users().get(userId).joinGroup(groupId);
+        updateDirectory(directory -> directory.addGroupMember(userId, groupId));
+        cacheInvalidator.evictMembership(userId, groupId);
+    }
     
     /**
      * Update an existing site
      */
-    @Caching(evict = {
-            @CacheEvict(value = GROUP_BY_ID_CACHE, key = "#groupId"),
-            @CacheEvict(value = GROUPS_CACHE, allEntries = true),
-            @CacheEvict(value = GROUP_BY_NAME_CACHE, allEntries = true)
-    })
     public boolean updateGroup(String groupId, GroupRepresentation updatedGroup) {
         try {
             // First get the current group to ensure it exists
@@ -596,10 +1059,13 @@ public class KeycloakService {
             // Update the group
             groupResource.update(updatedGroup);
             log.info("Updated site with ID: {}", groupId);
+            updateDirectory(directory -> directory.refreshGroup(groupId));
             return true;
         } catch (Exception e) {
             log.error("Error updating site with ID: {}", groupId, e);
             return false;
+        } finally {
+            cacheInvalidator.evictGroup(groupId, updatedGroup.getName());
         }
     }
     
@@ -607,16 +1073,6 @@ public class KeycloakService {
      * Delete a site
      * @param groupId
      */
-    @Caching(evict = {
-            @CacheEvict(value = GROUP_BY_ID_CACHE, key = "#groupId"),
-            @CacheEvict(value = GROUPS_CACHE, allEntries = true),
-            @CacheEvict(value = GROUP_BY_NAME_CACHE, allEntries = true),
-            @CacheEvict(value = GROUP_MEMBERS_CACHE, allEntries = true),
-            @CacheEvict(value = USERS_IN_GROUP_CACHE, key = "#groupId"),
-            @CacheEvict(value = USER_GROUPS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_ADMIN_GROUPS_CACHE, allEntries = true),
-            @CacheEvict(value = USER_SITES_CACHE, allEntries = true)
-    })
     public boolean deleteGroup(String groupId) {
         try {
             RealmResource realmResource = getRealmResource();
@@ -628,6 +1084,13 @@ public class KeycloakService {
             // Delete the group
             groupResource.remove();
             log.info("Deleted group with ID: {}", groupId);
+            updateDirectory(directory -> {
+                directory.removeGroup(groupId);
+                directory.removeRole(roleToRemove);
+            });
+            cacheInvalidator.evictGroup(groupId, group.getName());
+            cacheInvalidator.evictGroupMemberships(groupId);
+            cacheInvalidator.evictRole(roleToRemove);
 
             // Attempt to delete the associated role
             try {
@@ -654,20 +1117,32 @@ public class KeycloakService {
      */
     @Cacheable(value = GROUP_MEMBERS_CACHE, key = "#groupId + '_' + #userId")
     public boolean isUserInGroup(String userId, String groupId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsUser(userId)) {
+            return directory.isGroupMember(userId, groupId);
+        }
         try {
             log.debug("Cache miss: Checking if user '{}' is in group '{}'", userId, groupId);
-            UserResource userResource = getRealmResource().users().get(userId);
-            List<GroupRepresentation> userGroups = userResource.groups();
-            
-            // Check if any of the user's groups matches the site ID
-            return userGroups.stream()
-                .anyMatch(group -> group.getId().equals(groupId));
+            return fetchIsUserInGroup(userId, groupId);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error checking if user {} is in group {}", userId, groupId, e);
             return false;
         }
     }
 
+    /**
+     * Membership check straight against Keycloak, used before and after changing a membership
+     */
+    private boolean fetchIsUserInGroup(String userId, String groupId) {
+        UserResource userResource = getRealmResource().users().get(userId);
+        List<GroupRepresentation> userGroups = userResource.groups();
+
+        // Check if any of the user's groups matches the site ID
+        return userGroups.stream()
+            .anyMatch(group -> group.getId().equals(groupId));
+    }
+
     /**
      * Adds a user to a site
      *
@@ -675,25 +1150,20 @@ public class KeycloakService {
      * @param groupId the site ID
      * @return true if user was added to site successfully, false otherwise
      */
-    @Caching(evict = {
-            @CacheEvict(value = GROUP_MEMBERS_CACHE, key = "#groupId + '_' + #userId"),
-            @CacheEvict(value = USERS_IN_GROUP_CACHE, key = "#groupId"),
-            @CacheEvict(value = USER_GROUPS_CACHE, key = "#userId"),
-            @CacheEvict(value = USER_SITES_CACHE, key = "#userId")
-    })
     public boolean addUserToKeycloakGroup(String userId, String groupId) {
         try {
             // Check if user is already in the site
-            if (isUserInGroup(userId, groupId)) {
+            if (fetchIsUserInGroup(userId, groupId)) {
                 log.info("User {} is already in site {}", userId, groupId);
-                return true;
+            } else {
+                // Add user to site group
+                UserResource userResource = getRealmResource().users().get(userId);
+                userResource.joinGroup(groupId);
+
+                log.info("Added user {} to site {}", userId, groupId);
             }
-            
-            // Add user to site group
-            UserResource userResource = getRealmResource().users().get(userId);
-            userResource.joinGroup(groupId);
-            
-            log.info("Added user {} to site {}", userId, groupId);
+            updateDirectory(directory -> directory.addGroupMember(userId, groupId));
+            cacheInvalidator.evictMembership(userId, groupId);
             return true;
         } catch (Exception e) {
             log.error("Error adding user {} to site {}", userId, groupId, e);
@@ -705,7 +1175,7 @@ public class KeycloakService {
      * Generates a standardized site admin role name
      */
     public String getSiteAdminRoleName(String siteName) {
-        return siteName.toLowerCase().replace(' ', '_') + "_site_admin";
+        return siteName.toLowerCase().replace(' ', '_') + SITE_ADMIN_ROLE_SUFFIX;
     }
 
     /**
@@ -742,7 +1212,6 @@ public class KeycloakService {
     /**
      * Assigns the site admin role to a user
      */
-    @CacheEvict(value = USER_ROLES_CACHE, key = "#userId")
     public boolean assignSiteAdminRole(String userId, String siteName) {
         try {
             // Then assign it to the user
@@ -761,10 +1230,6 @@ public class KeycloakService {
     /**
      * Removes the site admin role from a user
      */
-    @CacheEvict(value = {
-            USER_ROLES_CACHE, 
-            USER_ADMIN_GROUPS_CACHE
-    }, key = "#userId")
     public void removeSiteAdminRole(String userId, String siteId, String requesterUserId) throws AccessDeniedException {
         if (!hasGlobalAdminRole(requesterUserId) &&
                 !isUserSiteAdmin(requesterUserId, siteId)) {
@@ -782,6 +1247,9 @@ public class KeycloakService {
             }
             userResource.roles().realmLevel().remove(Collections.singletonList(roleToRemove));
             log.info("Removed site admin role {} from user {}", roleName, userId);
+            updateDirectory(directory -> directory.removeRoleMember(userId, roleName));
+            cacheInvalidator.evictUserRoles(userId);
+            cacheInvalidator.evictRoleMembers(List.of(roleName));
         } catch (NotFoundException e) {
             log.warn("Role {} not found, so it cannot be removed from user {}. Assuming effectively removed.", roleName, userId);
             // Role to remove doesn't exist, so user effectively doesn't have it.
@@ -814,6 +1282,7 @@ public class KeycloakService {
             List<String> userRoles = getUserRoles(userId);
             return userRoles.contains(roleName);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error checking if user is site admin: {}", e.getMessage(), e);
             return false;
         }
@@ -847,13 +1316,14 @@ public class KeycloakService {
             log.warn("User with ID {} not found when trying to fetch admin groups.", userId);
             return new ArrayList<>(); // User not found, so no admin groups
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error getting admin sites for user {}", userId, e);
             return new ArrayList<>();
         }
     }
 
     // Add to KeycloakService
-    @Cacheable(value = "keycloak_user_admin_group_ids", key = "#userId")
+    @Cacheable(value = USER_ADMIN_GROUP_IDS_CACHE, key = "#userId")
     public List<String> getUserAdminGroupIds(String userId) {
         // First get the site names
         List<String> siteNames = getUserAdminGroups(userId);
@@ -869,11 +1339,13 @@ public class KeycloakService {
     /**
      * Check if a user has the GLOBAL_ADMIN role
      */
+    @Cacheable(value = USER_GLOBAL_ADMIN_CACHE, key = "#userId")
     public boolean hasGlobalAdminRole(String userId) {
         try {
             List<String> roles = getUserRoles(userId);
-            return roles.contains("global_admin");
+            return roles.contains(ROLE_GLOBAL_ADMIN);
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error checking if user {} has GLOBAL_ADMIN role", userId, e);
             return false;
         }
@@ -894,6 +1366,9 @@ public class KeycloakService {
             
             userResource.roles().realmLevel().add(Collections.singletonList(role));
             log.info("Assigned role {} to user {}", roleName, userId);
+            updateDirectory(directory -> directory.addRoleMember(userId, roleName));
+            cacheInvalidator.evictUserRoles(userId);
+            cacheInvalidator.evictRoleMembers(List.of(roleName));
             return true;
         } catch (NotFoundException e) {
             log.error("Role {} not found. Cannot assign to user {}. Ensure role exists.", roleName, userId, e);
@@ -919,6 +1394,9 @@ public class KeycloakService {
             
             userResource.roles().realmLevel().remove(Collections.singletonList(role));
             log.info("Removed role {} from user {}", roleName, userId);
+            updateDirectory(directory -> directory.removeRoleMember(userId, roleName));
+            cacheInvalidator.evictUserRoles(userId);
+            cacheInvalidator.evictRoleMembers(List.of(roleName));
             return true;
         } catch (NotFoundException e) {
             log.warn("Role {} not found. Cannot remove from user {}. Assuming already removed.", roleName, userId);
@@ -935,6 +1413,10 @@ public class KeycloakService {
      */
     @Cacheable(value = USERS_IN_GROUP_CACHE, key = "#groupId", unless = "#result.isEmpty()")
     public List<UserRepresentation> getUsersInGroup(String groupId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsGroup(groupId)) {
+            return directory.getGroupMembers(groupId);
+        }
         try {
             // Get the site (group) resource
             GroupResource groupResource = getRealmResource().groups().group(groupId);
@@ -945,25 +1427,52 @@ public class KeycloakService {
             log.debug("Found {} users in site {}", members.size(), groupId);
             return members;
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error getting users in site {}", groupId, e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Count the members of a site (group) without keeping their representations.
+     * Answered by the realm directory when loaded; otherwise the members are paged through
+     * in brief representation, as Keycloak has no member count endpoint for groups.
+     * @param groupId
+     */
+    @Cacheable(value = GROUP_MEMBER_COUNT_CACHE, key = "#groupId", sync = true)
+    public int countGroupMembers(String groupId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsGroup(groupId)) {
+            return directory.countGroupMembers(groupId);
+        }
+        try {
+            GroupResource groupResource = getRealmResource().groups().group(groupId);
+            int count = 0;
+            List<UserRepresentation> page;
+            do {
+                page = groupResource.members(count, pageSize, true);
+                count += page.size();
+            } while (page.size() == pageSize);
+
+            log.debug("Counted {} users in site {}", count, groupId);
+            return count;
+        } catch (NotFoundException e) {
+            log.debug("Site {} does not exist", groupId);
+            return 0;
+        } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
+            log.error("Error counting users in site {}", groupId, e);
+            return 0;
+        }
+    }
+
     /**
      * Remove a user from a site (group)
      */
-    @Caching(evict = {        
-        @CacheEvict(value = USERS_CACHE, allEntries = true),
-        @CacheEvict(value = USER_GROUPS_CACHE, key = "#userId"),
-        @CacheEvict(value = USER_SITES_CACHE, key = "#userId"),
-        @CacheEvict(value = USERS_IN_GROUP_CACHE, allEntries = true),
-        @CacheEvict(value = GROUP_MEMBERS_CACHE, allEntries = true),
-    })
     public boolean removeUserFromSite(String userId, String siteId) {
         try {
             // Check if user is actually in the site
-            if (!isUserInGroup(userId, siteId)) {
+            if (!fetchIsUserInGroup(userId, siteId)) {
                 log.info("User {} is not in site {}, nothing to remove", userId, siteId);
                 return true; // Not an error since the end state is what was desired
             }
@@ -973,9 +1482,11 @@ public class KeycloakService {
             
             // Remove the user from the group
             userResource.leaveGroup(siteId);
+            updateDirectory(directory -> directory.removeGroupMember(userId, siteId));
+            cacheInvalidator.evictMembership(userId, siteId);
             
             // Verify removal was successful
-            boolean stillInSite = isUserInGroup(userId, siteId);
+            boolean stillInSite = fetchIsUserInGroup(userId, siteId);
             if (stillInSite) {
                 log.warn("Failed to remove user {} from site {} - user is still a member", userId, siteId);
                 return false;
@@ -992,7 +1503,12 @@ public class KeycloakService {
     /**
      * Get all sites ids (groups) a user belongs to
      */
+    @Cacheable(value = USER_SITES_CACHE, key = "#userId", unless = "#result.isEmpty()")
     public List<String> getUserSites(String userId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsUser(userId)) {
+            return directory.getUserGroups(userId).stream().map(GroupRepresentation::getId).toList();
+        }
         try {
             // Get the user resource
             UserResource userResource = getRealmResource().users().get(userId);
@@ -1008,6 +1524,7 @@ public class KeycloakService {
             log.debug("User {} belongs to {} sites", userId, siteIds.size());
             return siteIds;
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error retrieving sites for user {}: {}", userId, e.getMessage(), e);
             return Collections.emptyList();
         }
@@ -1016,7 +1533,12 @@ public class KeycloakService {
     /**
      * Get all sites a user belongs to as GroupRepresentations
      */
+    @Cacheable(value = USER_GROUPS_CACHE, key = "#userId", unless = "#result.isEmpty()")
     public List<GroupRepresentation> getUserGroups(String userId) {
+        RealmDirectory directory = readyDirectory();
+        if (directory != null && directory.containsUser(userId)) {
+            return directory.getUserGroups(userId);
+        }
         try {
             // Get the user resource
             UserResource userResource = getRealmResource().users().get(userId);
@@ -1027,6 +1549,7 @@ public class KeycloakService {
             log.debug("User {} belongs to {} site groups", userId, userGroups.size());
             return userGroups;
         } catch (Exception e) {
+            KeycloakUnavailableException.rethrowIfUnavailable(e);
             log.error("Error retrieving site groups for user {}: {}", userId, e.getMessage(), e);
             return Collections.emptyList();
         }
@@ -1035,14 +1558,6 @@ public class KeycloakService {
     /**
      * Make a user a site admin
      */
-    @Caching(evict = {        
-        @CacheEvict(value = USERS_CACHE, allEntries = true),
-        @CacheEvict(value = USER_GROUPS_CACHE, key = "#userId"),
-        @CacheEvict(value = USER_SITES_CACHE, key = "#userId"),
-        @CacheEvict(value = USERS_IN_GROUP_CACHE, allEntries = true),
-        @CacheEvict(value = GROUP_MEMBERS_CACHE, allEntries = true),
-        @CacheEvict(value = USER_SITE_ADMIN_STATUS, key = "#userId + '_' + #siteId")
-    })
     public boolean makeSiteAdmin(String userId, String siteId, String requesterUserId) throws AccessDeniedException {
         if (!hasGlobalAdminRole(requesterUserId) &&
                 !isUserSiteAdmin(requesterUserId, siteId)) {
@@ -1183,18 +1698,20 @@ public class KeycloakService {
         try {
             log.debug("Attempting to assign groups to user: {}", userId);
             
-            // Get the user resource
-            UserResource userResource = getRealmResource().users().get(userId);
-            
             // Get all groups in the realm
-            List<GroupRepresentation> groups = getRealmResource().groups().groups();
+            List<String> groupIds = getRealmResource().groups().groups().stream()
+                    .map(GroupRepresentation::getId)
+                    .toList();
             
-            // Join each group individually
-            for (GroupRepresentation group : groups) {
-                userResource.joinGroup(group.getId());
-                log.debug("Added user {} to group {}", userId, group.getName());
-            }
+            // Join the groups in parallel, retrying the failed ones
+            MembershipJobDTO job = bulkMembershipExecutor.run("Add user " + userId + " to all groups",
+                    groupIds, groupId -> joinGroup(userId, groupId));
             
+            if (job.getStatus() != MembershipJobDTO.Status.COMPLETED) {
+                log.warn("User {} could not be added to {} of {} groups: {}",
+                        userId, job.getFailedItems().size(), job.getTotal(), job.getFailedItems());
+                return false;
+            }
             log.debug("All groups successfully assigned to user: {}", userId);
             return true;
         } catch (Exception e) {
@@ -0,0 +1,31 @@
+package it.polito.cloudresources.be.service;
+
+/**
+ * Thrown when a Keycloak admin call is not attempted or not completed because Keycloak is considered
+ * unavailable: the circuit breaker is open, too many calls are already in flight or the call timed out.
+ * Unlike the errors returned by Keycloak itself, it says nothing about the requested entity, so results
+ * derived from it must not be cached.
+ */
+public class KeycloakUnavailableException extends RuntimeException {
+
+    private final String operation;
+
+    public KeycloakUnavailableException(String operation, Throwable cause) {
+        super("Keycloak unavailable (" + operation + "): " + cause.getMessage(), cause);
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Rethrows the given exception if it signals that Keycloak is unavailable, so that callers turning
+     * errors into empty results let it propagate instead
+     */
+    public static void rethrowIfUnavailable(Exception e) {
+        if (e instanceof KeycloakUnavailableException unavailable) {
+            throw unavailable;
+        }
+    }
+}
@@ -108,6 +108,20 @@ public class MockKeycloakService extends KeycloakService {
         return Optional.ofNullable(users.get(id));
     }
 
+    @Override
+    public Map<String, UserRepresentation> getUsersByIds(Collection<String> ids) {
+        Map<String, UserRepresentation> found = new HashMap<>();
+        ids.stream().filter(Objects::nonNull).filter(users::containsKey).forEach(id -> found.put(id, users.get(id)));
+        return found;
+    }
+
+    @Override
+    public Map<String, List<String>> getUserRolesByIds(Collection<String> userIds) {
+        Map<String, List<String>> rolesByUser = new HashMap<>();
+        userIds.stream().filter(Objects::nonNull).forEach(id -> rolesByUser.put(id, getUserRoles(id)));
+        return rolesByUser;
+    }
+
     @Override
     public String createUser(UserDTO userDTO, String password) {
         String userId = UUID.randomUUID().toString();
@@ -130,6 +144,7 @@ public class MockKeycloakService extends KeycloakService {
             attributes.put(ATTR_AVATAR, Collections.singletonList(userDTO.getAvatar()));
         }
         userAttributes.put(userId, attributes);
+        user.setAttributes(attributes); // Keycloak returns the attributes with the user
 
         Set<String> roles = userDTO.getRoles();
         
@@ -195,6 +210,7 @@ public class MockKeycloakService extends KeycloakService {
         }
 
         userAttributes.put(userId, userAttrs);
+        user.setAttributes(userAttrs);
 
         if (attributes.containsKey("roles")) {
             @SuppressWarnings("unchecked")
@@ -542,6 +558,11 @@ public class MockKeycloakService extends KeycloakService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public int countGroupMembers(String siteId) {
+        return getUsersInGroup(siteId).size();
+    }
+
     @Override
     public boolean makeSiteAdmin(String userId, String siteId, String requesterUserId) {
         // Check permissions
@@ -16,6 +16,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -155,16 +156,16 @@ public class NotificationService {
             notificationType = NotificationType.INFO;
         }
         
+        List<Notification> notifications = new ArrayList<>(users.size());
         for (UserRepresentation user : users) {
             Notification notification = new Notification();
             notification.setMessage(message);
             notification.setType(notificationType);
             notification.setRead(false);
             notification.setKeycloakId(user.getId());
-            
-            notificationRepository.save(notification);
+            notifications.add(notification);
         }
-
+        notificationRepository.saveAll(notifications);
     }
 
     /**
@@ -0,0 +1,458 @@
+package it.polito.cloudresources.be.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory mirror of the Keycloak realm: users, groups (sites), group memberships and realm role mappings.
+ * Users are indexed by ID, username and email, groups by ID and name; the members of every group and role
+ * are kept as bitsets over user ordinals, so membership queries are answered without leaving the process.
+ *
+ * The mirror is updated incrementally: write-through by {@link KeycloakService} when we change the realm
+ * ourselves, and by {@link KeycloakAdminEventListener} for the changes made in Keycloak when admin events
+ * are enabled. The full reload reads the whole realm, so it only runs rarely, as a safety net against
+ * missed updates, on its own thread rather than on the shared scheduler. Until the first load completes
+ * {@link #isReady()} is false and callers are expected to go to Keycloak instead.
+ */
+@Component
+@Profile("!dev")
+@ConditionalOnProperty(prefix = "keycloak.directory", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class RealmDirectory {
+
+    // Resolved lazily: KeycloakService itself depends on the directory
+    private final ObjectProvider<KeycloakService> keycloakServiceProvider;
+
+    @Value("${keycloak.directory.page-size:500}")
+    private int pageSize;
+
+    @Value("${keycloak.directory.initial-delay-ms:0}")
+    private long initialDelayMs;
+
+    @Value("${keycloak.directory.sync-interval-ms:21600000}")
+    private long syncIntervalMs;
+
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("realm-directory-sync").daemon().factory());
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+
+    // Guarded by lock
+    private State state = new State();
+    // Write-through updates received while a sync is loading, replayed on the new state; null when idle
+    private List<Consumer<State>> pendingUpdates;
+
+    private volatile boolean ready;
+
+    /**
+     * Whether the mirror has been loaded at least once
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSync() {
+        syncExecutor.scheduleWithFixedDelay(this::sync, initialDelayMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncExecutor.shutdownNow();
+    }
+
+    /**
+     * Reloads the whole realm and atomically replaces the mirror. Reads keep being served from the
+     * previous snapshot while loading; if the load fails the previous snapshot is kept.
+     */
+    public void sync() {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        withWriteLock(() -> pendingUpdates = new ArrayList<>());
+        try {
+            long start = System.currentTimeMillis();
+            State loaded = load(keycloakServiceProvider.getObject().getRealmResource());
+            withWriteLock(() -> {
+                pendingUpdates.forEach(update -> update.accept(loaded));
+                state = loaded;
+            });
+            ready = true;
+            log.info("Realm directory synchronized: {} users, {} groups, {} roles in {}ms",
+                    loaded.usersById.size(), loaded.groupsById.size(), loaded.roleMembers.size(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Realm directory sync failed, {}: {}",
+                    ready ? "keeping the previous snapshot" : "reads will go to Keycloak", e.getMessage(), e);
+        } finally {
+            withWriteLock(() -> pendingUpdates = null);
+            syncing.set(false);
+        }
+    }
+
+    private State load(RealmResource realm) {
+        State loaded = new State();
+
+        realm.groups().groups().forEach(loaded::putGroup);
+        forEachPage(first -> realm.users().list(first, pageSize), loaded::putUser);
+
+        for (String groupId : loaded.groupsById.keySet()) {
+            forEachPage(first -> realm.groups().group(groupId).members(first, pageSize),
+                    member -> loaded.addGroupMember(member.getId(), groupId));
+        }
+        for (RoleRepresentation role : realm.roles().list()) {
+            loaded.roleMembers.computeIfAbsent(role.getName(), name -> new BitSet());
+            forEachPage(first -> new ArrayList<>(realm.roles().get(role.getName()).getRoleUserMembers(first, pageSize)),
+                    member -> loaded.addRoleMember(member.getId(), role.getName()));
+        }
+        return loaded;
+    }
+
+    private void forEachPage(IntFunction<List<UserRepresentation>> pageLoader, Consumer<UserRepresentation> action) {
+        int first = 0;
+        List<UserRepresentation> page;
+        do {
+            page = pageLoader.apply(first);
+            page.forEach(action);
+            first += page.size();
+        } while (page.size() == pageSize);
+    }
+
+    // ---- Reads ----
+
+    public boolean containsUser(String userId) {
+        return read(s -> s.usersById.containsKey(userId));
+    }
+
+    public boolean containsGroup(String groupId) {
+        return read(s -> s.groupsById.containsKey(groupId));
+    }
+
+    public Optional<UserRepresentation> findUserById(String userId) {
+        return read(s -> Optional.ofNullable(s.usersById.get(userId)));
+    }
+
+    /**
+     * Returns the known users among the given IDs, keyed by ID
+     */
+    public Map<String, UserRepresentation> findUsersByIds(Collection<String> userIds) {
+        return read(s -> {
+            Map<String, UserRepresentation> found = new HashMap<>();
+            for (String userId : userIds) {
+                UserRepresentation user = s.usersById.get(userId);
+                if (user != null) {
+                    found.put(userId, user);
+                }
+            }
+            return found;
+        });
+    }
+
+    public Optional<UserRepresentation> findUserByUsername(String username) {
+        return read(s -> Optional.ofNullable(s.userIdsByUsername.get(normalize(username))).map(s.usersById::get));
+    }
+
+    public Optional<UserRepresentation> findUserByEmail(String email) {
+        return read(s -> Optional.ofNullable(s.userIdsByEmail.get(normalize(email))).map(s.usersById::get));
+    }
+
+    public List<UserRepresentation> getUsers() {
+        return read(s -> new ArrayList<>(s.usersById.values()));
+    }
+
+    public List<GroupRepresentation> getGroups() {
+        return read(s -> new ArrayList<>(s.groupsById.values()));
+    }
+
+    public Optional<GroupRepresentation> findGroupById(String groupId) {
+        return read(s -> Optional.ofNullable(s.groupsById.get(groupId)));
+    }
+
+    public Optional<GroupRepresentation> findGroupByName(String groupName) {
+        return read(s -> Optional.ofNullable(s.groupIdsByName.get(groupName)).map(s.groupsById::get));
+    }
+
+    public boolean isGroupMember(String userId, String groupId) {
+        return read(s -> {
+            Integer ordinal = s.ordinals.get(userId);
+            BitSet members = s.groupMembers.get(groupId);
+            return ordinal != null && members != null && members.get(ordinal);
+        });
+    }
+
+    public List<UserRepresentation> getGroupMembers(String groupId) {
+        return read(s -> s.usersOf(s.groupMembers.get(groupId)));
+    }
+
+    public int countGroupMembers(String groupId) {
+        return read(s -> {
+            BitSet members = s.groupMembers.get(groupId);
+            return members == null ? 0 : members.cardinality();
+        });
+    }
+
+    public List<GroupRepresentation> getUserGroups(String userId) {
+        return read(s -> {
+            Integer ordinal = s.ordinals.get(userId);
+            if (ordinal == null) {
+                return List.of();
+            }
+            return s.groupsById.values().stream()
+                    .filter(group -> s.groupMembers.getOrDefault(group.getId(), new BitSet()).get(ordinal))
+                    .toList();
+        });
+    }
+
+    public List<String> getUserRoles(String userId) {
+        return read(s -> {
+            Integer ordinal = s.ordinals.get(userId);
+            if (ordinal == null) {
+                return List.of();
+            }
+            return s.roleMembers.entrySet().stream()
+                    .filter(entry -> entry.getValue().get(ordinal))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        });
+    }
+
+    /**
+     * Returns the roles of each of the given known users, scanning every role once
+     */
+    public Map<String, List<String>> getUserRoles(Collection<String> userIds) {
+        return read(s -> {
+            Map<String, List<String>> rolesByUser = new HashMap<>();
+            BitSet requested = new BitSet();
+            for (String userId : userIds) {
+                Integer ordinal = s.ordinals.get(userId);
+                if (ordinal != null) {
+                    requested.set(ordinal);
+                    rolesByUser.put(userId, new ArrayList<>());
+                }
+            }
+            s.roleMembers.forEach((roleName, members) -> {
+                BitSet holders = (BitSet) members.clone();
+                holders.and(requested);
+                holders.stream().forEach(ordinal -> rolesByUser.get(s.userIdsByOrdinal.get(ordinal)).add(roleName));
+            });
+            return rolesByUser;
+        });
+    }
+
+    public List<UserRepresentation> getRoleMembers(String roleName) {
+        return read(s -> s.usersOf(s.roleMembers.get(roleName)));
+    }
+
+    // ---- Write-through ----
+
+    /**
+     * Reloads a single user with its group memberships and role mappings
+     */
+    public void refreshUser(String userId) {
+        RealmResource realm = keycloakServiceProvider.getObject().getRealmResource();
+        UserRepresentation user = realm.users().get(userId).toRepresentation();
+        Set<String> groupIds = new HashSet<>();
+        realm.users().get(userId).groups().forEach(group -> groupIds.add(group.getId()));
+        Set<String> roleNames = new HashSet<>();
+        realm.users().get(userId).roles().realmLevel().listAll().forEach(role -> roleNames.add(role.getName()));
+
+        update(s -> {
+            s.putUser(user);
+            int ordinal = s.ordinal(userId);
+            s.groupMembers.forEach((groupId, members) -> members.set(ordinal, groupIds.contains(groupId)));
+            groupIds.forEach(groupId -> s.addGroupMember(userId, groupId));
+            s.roleMembers.forEach((roleName, members) -> members.set(ordinal, roleNames.contains(roleName)));
+            roleNames.forEach(roleName -> s.addRoleMember(userId, roleName));
+        });
+    }
+
+    public void removeUser(String userId) {
+        update(s -> s.removeUser(userId));
+    }
+
+    /**
+     * Reloads a single group, keeping its known members
+     */
+    public void refreshGroup(String groupId) {
+        GroupRepresentation group = keycloakServiceProvider.getObject().getRealmResource()
+                .groups().group(groupId).toRepresentation();
+        update(s -> s.putGroup(group));
+    }
+
+    public void removeGroup(String groupId) {
+        update(s -> s.removeGroup(groupId));
+    }
+
+    public void addGroupMember(String userId, String groupId) {
+        update(s -> s.addGroupMember(userId, groupId));
+    }
+
+    public void removeGroupMember(String userId, String groupId) {
+        update(s -> s.removeMember(s.groupMembers.get(groupId), userId));
+    }
+
+    public void addRoleMember(String userId, String roleName) {
+        update(s -> s.addRoleMember(userId, roleName));
+    }
+
+    public void removeRoleMember(String userId, String roleName) {
+        update(s -> s.removeMember(s.roleMembers.get(roleName), userId));
+    }
+
+    public void removeRole(String roleName) {
+        update(s -> s.roleMembers.remove(roleName));
+    }
+
+    private void update(Consumer<State> update) {
+        withWriteLock(() -> {
+            update.accept(state);
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+            }
+        });
+    }
+
+    private <T> T read(Function<State, T> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void withWriteLock(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Indexed realm contents. Not thread-safe, always accessed under the directory lock.
+     */
+    private static final class State {
+        private final Map<String, UserRepresentation> usersById = new HashMap<>();
+        private final Map<String, String> userIdsByUsername = new HashMap<>();
+        private final Map<String, String> userIdsByEmail = new HashMap<>();
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<String> userIdsByOrdinal = new ArrayList<>();
+        private final Map<String, GroupRepresentation> groupsById = new LinkedHashMap<>();
+        private final Map<String, String> groupIdsByName = new HashMap<>();
+        private final Map<String, BitSet> groupMembers = new HashMap<>();
+        private final Map<String, BitSet> roleMembers = new HashMap<>();
+
+        private int ordinal(String userId) {
+            return ordinals.computeIfAbsent(userId, id -> {
+                userIdsByOrdinal.add(id);
+                return userIdsByOrdinal.size() - 1;
+            });
+        }
+
+        private void putUser(UserRepresentation user) {
+            UserRepresentation previous = usersById.put(user.getId(), user);
+            if (previous != null) {
+                userIdsByUsername.remove(normalize(previous.getUsername()), previous.getId());
+                userIdsByEmail.remove(normalize(previous.getEmail()), previous.getId());
+            }
+            if (user.getUsername() != null) {
+                userIdsByUsername.put(normalize(user.getUsername()), user.getId());
+            }
+            if (user.getEmail() != null) {
+                userIdsByEmail.put(normalize(user.getEmail()), user.getId());
+            }
+            ordinal(user.getId());
+        }
+
+        private void removeUser(String userId) {
+            UserRepresentation user = usersById.remove(userId);
+            if (user != null) {
+                userIdsByUsername.remove(normalize(user.getUsername()), userId);
+                userIdsByEmail.remove(normalize(user.getEmail()), userId);
+            }
+            Integer ordinal = ordinals.remove(userId);
+            if (ordinal != null) {
+                // The ordinal is not reused, the slot just stays empty until the next full sync
+                userIdsByOrdinal.set(ordinal, null);
+                groupMembers.values().forEach(members -> members.clear(ordinal));
+                roleMembers.values().forEach(members -> members.clear(ordinal));
+            }
+        }
+
+        private void putGroup(GroupRepresentation group) {
+            GroupRepresentation previous = groupsById.put(group.getId(), group);
+            if (previous != null) {
+                groupIdsByName.remove(previous.getName(), previous.getId());
+            }
+            groupIdsByName.put(group.getName(), group.getId());
+            groupMembers.computeIfAbsent(group.getId(), id -> new BitSet());
+        }
+
+        private void removeGroup(String groupId) {
+            GroupRepresentation group = groupsById.remove(groupId);
+            if (group != null) {
+                groupIdsByName.remove(group.getName(), groupId);
+            }
+            groupMembers.remove(groupId);
+        }
+
+        private void addGroupMember(String userId, String groupId) {
+            groupMembers.computeIfAbsent(groupId, id -> new BitSet()).set(ordinal(userId));
+        }
+
+        private void addRoleMember(String userId, String roleName) {
+            roleMembers.computeIfAbsent(roleName, name -> new BitSet()).set(ordinal(userId));
+        }
+
+        private void removeMember(BitSet members, String userId) {
+            Integer ordinal = ordinals.get(userId);
+            if (members != null && ordinal != null) {
+                members.clear(ordinal);
+            }
+        }
+
+        private List<UserRepresentation> usersOf(BitSet members) {
+            if (members == null) {
+                return List.of();
+            }
+            List<UserRepresentation> users = new ArrayList<>(members.cardinality());
+            members.stream()
+                    .mapToObj(userIdsByOrdinal::get)
+                    .filter(Objects::nonNull)
+                    .map(usersById::get)
+                    .filter(Objects::nonNull)
+                    .forEach(users::add);
+            return users;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package it.polito.cloudresources.be.service;
+
+/**
+ * Thrown when the locks serializing the bookings of a resource hierarchy are not obtained in time,
+ * either within the instance or on the database. Nothing was changed, the request can be retried.
+ */
+public class ResourceBusyException extends RuntimeException {
+
+    public ResourceBusyException(String message) {
+        super(message);
+    }
+
+    public ResourceBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,149 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.model.ResourceClosure;
+import it.polito.cloudresources.be.repository.ResourceClosureRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Maintains the resource closure table as resources are created, moved and deleted, and answers
+ * hierarchy questions from it. The table is checked against the parent links at startup and rebuilt
+ * if they differ, e.g. when it is first introduced or after resources were changed outside the services.
+ * The check runs once every bean is created, before the web server starts taking requests.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceHierarchyService implements SmartInitializingSingleton {
+
+    private final ResourceClosureRepository resourceClosureRepository;
+    private final ResourceRepository resourceRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Returns the IDs of a resource, its ancestors and its descendants; empty if the resource does not exist
+     */
+    public Set<Long> getRelatedResourceIds(Long resourceId) {
+        return new LinkedHashSet<>(resourceClosureRepository.findRelatedResourceIds(resourceId));
+    }
+
+    /**
+     * Returns the IDs of the ancestors and descendants of each of the given resources, the resource itself
+     * included, with a single query; the resources that do not exist are left out
+     */
+    public Map<Long, Set<Long>> getRelatedResourceIds(Collection<Long> resourceIds) {
+        Map<Long, Set<Long>> related = new HashMap<>();
+        for (ResourceClosure link : resourceClosureRepository.findLinksOf(resourceIds)) {
+            if (resourceIds.contains(link.getDescendantId())) {
+                related.computeIfAbsent(link.getDescendantId(), id -> new LinkedHashSet<>()).add(link.getAncestorId());
+            }
+            if (resourceIds.contains(link.getAncestorId())) {
+                related.computeIfAbsent(link.getAncestorId(), id -> new LinkedHashSet<>()).add(link.getDescendantId());
+            }
+        }
+        return related;
+    }
+
+    /**
+     * Returns the ID of the root of the hierarchy a resource belongs to, the resource itself if it is a root
+     */
+    public Long getRootId(Long resourceId) {
+        return resourceClosureRepository.findFirstByDescendantIdOrderByDepthDesc(resourceId)
+                .map(ResourceClosure::getAncestorId)
+                .orElse(resourceId);
+    }
+
+    /**
+     * Tells whether a resource is the given one or one of its descendants
+     */
+    public boolean isInSubtree(Long resourceId, Long rootId) {
+        return resourceClosureRepository.existsByAncestorIdAndDescendantId(rootId, resourceId);
+    }
+
+    /**
+     * Adds a new resource below its parent, if any
+     */
+    @Transactional
+    public void resourceCreated(Long resourceId, Long parentId) {
+        resourceClosureRepository.save(new ResourceClosure(resourceId, resourceId, 0));
+        if (parentId != null) {
+            resourceClosureRepository.linkToParent(resourceId, parentId);
+        }
+    }
+
+    /**
+     * Moves a resource, with its whole subtree, below a new parent or to the top level
+     */
+    @Transactional
+    public void resourceMoved(Long resourceId, Long newParentId) {
+        if (newParentId != null && isInSubtree(newParentId, resourceId)) {
+            throw new IllegalStateException("A resource cannot be moved below itself or one of its sub-resources");
+        }
+        resourceClosureRepository.detachSubtree(resourceId);
+        if (newParentId != null) {
+            resourceClosureRepository.attachSubtree(resourceId, newParentId);
+        }
+    }
+
+    /**
+     * Removes a deleted resource; its sub-resources are expected to be deleted as well
+     */
+    @Transactional
+    public void resourceDeleted(Long resourceId) {
+        resourceClosureRepository.deleteLinks(resourceId);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> verifyClosureTable());
+        } catch (PessimisticLockingFailureException e) {
+            log.warn("Resource closure table not verified, another instance is verifying it: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the table from the parent links if it does not match them. The row of the first resource
+     * is locked meanwhile, so that instances starting together check and rebuild the table one at a time.
+     */
+    @Transactional
+    public void verifyClosureTable() {
+        resourceRepository.findMinId().ifPresent(resourceRepository::lockById);
+
+        Map<Long, Long> parentOf = new HashMap<>();
+        for (Object[] row : resourceRepository.findAllParentLinks()) {
+            parentOf.put((Long) row[0], (Long) row[1]);
+        }
+
+        Map<Long, Long> linkedParentOf = new HashMap<>();
+        resourceClosureRepository.findResourceIds().forEach(id -> linkedParentOf.put(id, null));
+        for (Object[] row : resourceClosureRepository.findParentLinks()) {
+            linkedParentOf.put((Long) row[1], (Long) row[0]);
+        }
+
+        if (parentOf.equals(linkedParentOf)) {
+            return;
+        }
+
+        List<ResourceClosure> rows = new ArrayList<>();
+        for (Long resourceId : parentOf.keySet()) {
+            Set<Long> visited = new HashSet<>();
+            int depth = 0;
+            // The visited check guards against cycles in the parent links
+            for (Long ancestorId = resourceId; ancestorId != null && visited.add(ancestorId); ancestorId = parentOf.get(ancestorId)) {
+                rows.add(new ResourceClosure(ancestorId, resourceId, depth++));
+            }
+        }
+        resourceClosureRepository.deleteAllInBatch();
+        resourceClosureRepository.saveAll(rows);
+        log.info("Resource closure table rebuilt: {} resources, {} rows", parentOf.size(), rows.size());
+    }
+}
@@ -24,8 +24,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -43,37 +45,41 @@ public class ResourceService {
     private final EventRepository eventRepository;
     private final NotificationService notificationService;
     private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final AuditLogService auditLogService;
     private final ResourceMapper resourceMapper;
     private final WebhookService webhookService;
     private final DateTimeUtils dateTimeUtils;
     private final WebhookLogRepository webhookLogRepository;
     private final WebhookConfigRepository webhookConfigRepository;
+    private final BookingIndex bookingIndex;
+    private final ResourceHierarchyService resourceHierarchyService;
+    private final BookingLockManager bookingLockManager;
 
 
     public List<ResourceDTO> getAllResources(String userId) {
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+        if (access.isGlobalAdmin()) {
             // Global admins see all resources
             return resourceMapper.toDto(resourceRepository.findAll());
         } else {
             // Site admins and regular users see only resources in their site
-            List<String> userSites = keycloakService.getUserSites(userId);
-            System.out.print("TEST TEST: " + userSites);
-            log.info("User requested with sites: " + userSites);
+            List<String> userSites = new ArrayList<>(access.getMemberSiteIds());
+            log.debug("User requested with sites: {}", userSites);
             return resourceMapper.toDto(resourceRepository.findBySiteIdIn(userSites));
         }
     }
 
     public List<ResourceDTO> getResourcesBySite(String siteId, String currentUserKeycloakId) {
         // Check if user has access to this site
-        if (!keycloakService.isUserInGroup(currentUserKeycloakId, siteId) &&
-            !keycloakService.hasGlobalAdminRole(currentUserKeycloakId)) {
+        if (!accessContextService.getAccessContext(currentUserKeycloakId).canAccessSite(siteId)) {
             throw new AccessDeniedException("User don't have permission to access resources in this site");
         }
 
         return resourceMapper.toDto(resourceRepository.findBySiteId(siteId));
     }
 
+    @Transactional
     public ResourceDTO createResource(ResourceDTO resourceDTO, String userId) {
         // Check authorization
         if (!canUpdateResourceInSite(userId, resourceDTO.getSiteId())) {
@@ -83,6 +89,8 @@ public class ResourceService {
         // Create resource
         Resource resource = resourceMapper.toEntity(resourceDTO);
         Resource savedResource = resourceRepository.save(resource);
+        resourceHierarchyService.resourceCreated(savedResource.getId(), parentIdOf(savedResource));
+        bookingIndex.resourceSaved(savedResource);
 
         String siteName = keycloakService.getSiteNameById(savedResource.getSiteId(), "Unknown site");
 
@@ -109,7 +117,7 @@ public class ResourceService {
 
         String siteId = resource.get().getSiteId();
 
-        if (!keycloakService.getUserSites(userId).contains(siteId)) {
+        if (!accessContextService.getAccessContext(userId).isMemberOf(siteId)) {
             throw new AccessDeniedException("Resource can't be accessed by user");
         }
 
@@ -120,7 +128,7 @@ public class ResourceService {
      * Get resources by status
      */
     public List<ResourceDTO> getResourcesByStatus(ResourceStatus status, String userId) {
-        List<String> siteIds = keycloakService.getUserSites(userId);
+        List<String> siteIds = new ArrayList<>(accessContextService.getAccessContext(userId).getMemberSiteIds());
         return resourceMapper.toDto(resourceRepository.findBySiteIdInAndStatus(siteIds, status));
     }
 
@@ -128,7 +136,7 @@ public class ResourceService {
      * Get resources by type
      */
     public List<ResourceDTO> getResourcesByType(Long typeId, String userId) {
-        List<String> siteIds = keycloakService.getUserSites(userId);
+        List<String> siteIds = new ArrayList<>(accessContextService.getAccessContext(userId).getMemberSiteIds());
         return resourceMapper.toDto(resourceRepository.findBySiteIdInAndTypeId(siteIds, typeId));
     }
 
@@ -146,13 +154,24 @@ public class ResourceService {
                 .map(existingResource -> {
                     // Store old status for comparison
                     ResourceStatus oldStatus = existingResource.getStatus();
+                    Long oldParentId = parentIdOf(existingResource);
                     
                     // Update resource using mapper
                     Resource updatedResource = resourceMapper.toEntity(resourceDTO);
                     updatedResource.setId(id);
                     
+                    // Moving a resource changes the hierarchies its bookings conflict in
+                    boolean moved = !Objects.equals(oldParentId, parentIdOf(updatedResource));
+                    if (moved) {
+                        bookingLockManager.lockHierarchies(Arrays.asList(id, parentIdOf(updatedResource)));
+                    }
+
                     // Save the updated resource
                     Resource savedResource = resourceRepository.save(updatedResource);
+                    if (moved) {
+                        resourceHierarchyService.resourceMoved(id, parentIdOf(savedResource));
+                    }
+                    bookingIndex.resourceSaved(savedResource);
 
                     String siteName = keycloakService.getSiteNameById(savedResource.getSiteId(), "Unknown site");
 
@@ -295,6 +314,8 @@ public class ResourceService {
         // 5. Finally delete the resource itself
         try {
             resourceRepository.delete(resource);
+            resourceHierarchyService.resourceDeleted(id);
+            bookingIndex.resourceDeleted(id);
 
             String siteName = keycloakService.getSiteNameById(resource.getSiteId(), "Unknown site");
 
@@ -322,7 +343,7 @@ public class ResourceService {
      * Search resources
      */
     public List<ResourceDTO> searchResources(String query, String userId) {
-        List<String> siteIds = keycloakService.getUserSites(userId);
+        List<String> siteIds = new ArrayList<>(accessContextService.getAccessContext(userId).getMemberSiteIds());
 
         return resourceMapper.toDto(
                 resourceRepository.findBySiteIdInAndNameContainingOrSpecsContainingOrLocationContaining(
@@ -415,11 +436,8 @@ public class ResourceService {
         }
     }
 
-    public void collectAllSubResources(Resource resource, List<Resource> subResources) {
-        resource.getSubResources().forEach(subResource -> {
-            subResources.add(subResource);
-            collectAllSubResources(subResource, subResources);
-        });
+    private static Long parentIdOf(Resource resource) {
+        return resource.getParent() != null ? resource.getParent().getId() : null;
     }
 
     
@@ -427,26 +445,12 @@ public class ResourceService {
      * Check if user can access a resource (is in the resource's site)
      */
     public boolean canAccessResource(String userId, Resource resource) {
-        // Global admins can access all resources
-        if (keycloakService.hasGlobalAdminRole(userId)) {
-            return true;
-        }
-        
-        // Check if user is in the resource's site
-        return keycloakService.isUserInGroup(userId, resource.getSiteId());
+        // Global admins can access all resources, other users only the ones in their sites
+        return accessContextService.getAccessContext(userId).canAccessSite(resource.getSiteId());
     }
 
     private boolean canUpdateResourceInSite(String userId, String siteId) {
-        // Global admins can create resources in any site
-        if (keycloakService.hasGlobalAdminRole(userId)) {
-            return true;
-        }
-        
-        // Site admins can create resources only in their sites
-        if (keycloakService.isUserSiteAdmin(userId, siteId)) {
-            return true;
-        }
-        
-        return false;
+        // Global admins can create resources in any site, site admins only in their sites
+        return accessContextService.getAccessContext(userId).isSiteAdmin(siteId);
     }
 }
\ No newline at end of file
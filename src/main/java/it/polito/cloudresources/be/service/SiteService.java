@@ -1,6 +1,7 @@
 package it.polito.cloudresources.be.service;
 
 import it.polito.cloudresources.be.dto.EventDTO;
+import it.polito.cloudresources.be.dto.MembershipJobDTO;
 import it.polito.cloudresources.be.dto.ResourceDTO;
 import it.polito.cloudresources.be.dto.ResourceTypeDTO;
 import it.polito.cloudresources.be.dto.SiteDTO;
@@ -12,11 +13,14 @@ import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -29,6 +33,7 @@ import java.util.stream.Collectors;
 @Slf4j
 public class SiteService {
     private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final AuditLogService auditLogService;
     private final SiteMapper siteMapper;
     private final UserMapper userMapper;
@@ -43,8 +48,7 @@ public class SiteService {
         List<SiteDTO> sites = siteMapper.toDto(keycloakService.getUserGroups(userId));
 
         for (SiteDTO site : sites) {
-            int memberCount = keycloakService.getUsersInGroup(site.getId()).size();
-            site.setMemberCount(memberCount);
+            site.setMemberCount(keycloakService.countGroupMembers(site.getId()));
         }
 
         return sites;
@@ -56,8 +60,7 @@ public class SiteService {
     public SiteDTO getSiteById(String id, String userId) throws AccessDeniedException {
         Optional<GroupRepresentation> keycloakGroup = keycloakService.getGroupById(id);
 
-        if (!keycloakService.hasGlobalAdminRole(userId) &&
-            !keycloakService.isUserInGroup(userId, id)) {
+        if (!accessContextService.getAccessContext(userId).canAccessSite(id)) {
             throw new AccessDeniedException("User does not have permission");
         }
 
@@ -87,6 +90,9 @@ public class SiteService {
         if(privateSite)
             keycloakService.addUserToKeycloakGroup(userId, siteId);
 
+        // Roles and memberships of the creator changed
+        accessContextService.invalidate(userId);
+
         // Log the action
         auditLogService.logCrudAction(AuditLog.LogType.ADMIN,
                 AuditLog.LogAction.CREATE,
@@ -94,15 +100,28 @@ public class SiteService {
                 "Created site: " + siteDTO.getName(),
                 siteDTO.getName());
 
-        int memberCount = keycloakService.getUsersInGroup(siteId).size();
+        int memberCount = keycloakService.countGroupMembers(siteId);
         SiteDTO siteOutputDto = keycloakService.getGroupById(siteId)
                 .map(siteMapper::toDto)
                 .orElseThrow(() -> new RuntimeException("Site created but could not be retrieved"));
         
         siteOutputDto.setMemberCount(memberCount);
+        // Members of public sites are still being added in the background
+        keycloakService.getSiteMembershipJob(siteId)
+                .ifPresent(job -> siteOutputDto.setMembershipJobId(job.getId()));
         return siteOutputDto;
     }
     
+    /**
+     * Get the progress of the job adding all users to a new public site
+     */
+    public Optional<MembershipJobDTO> getSiteMembershipJob(String siteId, String userId) throws AccessDeniedException {
+        if (!accessContextService.getAccessContext(userId).isSiteAdmin(siteId)) {
+            throw new AccessDeniedException("User can't access this site");
+        }
+        return keycloakService.getSiteMembershipJob(siteId);
+    }
+    
     /**
      * Update existing site
      */
@@ -143,8 +162,7 @@ public class SiteService {
 
         String siteName = groupRepresentationOpt.get().getName();
 
-        if (!keycloakService.getUserAdminGroups(userId).contains(siteName) &&
-                !keycloakService.hasGlobalAdminRole(userId)) {
+        if (!accessContextService.getAccessContext(userId).isSiteAdmin(id)) {
             throw new AccessDeniedException("Only site admin can delete sites");
         }
 
@@ -184,31 +202,51 @@ public class SiteService {
      */
     public List<UserDTO> getUsersInSite(String siteId, String userId) throws AccessDeniedException {
         // Check if user has access to this site
-        if (!keycloakService.hasGlobalAdminRole(userId) &&
-                !keycloakService.isUserSiteAdmin(userId, siteId)) {
+        if (!accessContextService.getAccessContext(userId).isSiteAdmin(siteId)) {
             throw new AccessDeniedException("User can't access this site");
         }
         return userMapper.toDto(keycloakService.getUsersInGroup(siteId));
     }
 
+    /**
+     * Get the admins of a site: the members holding its site admin role, or the global admin role
+     * which implies it. Resolved from the (cached) members of the two roles, so the cost depends on
+     * the number of admins rather than on the size of the site.
+     * @param siteId
+     */
     public List<UserDTO> getUsersSiteAdmins(String siteId, String userId) throws AccessDeniedException {
-        List<UserDTO> allSiteUsers = getUsersInSite(siteId, userId); //Role checking is performed internally in this method
-        return allSiteUsers.stream()
-                .filter(user -> keycloakService.isUserSiteAdmin(user.getId(), siteId)).toList();
+        if (!accessContextService.getAccessContext(userId).isSiteAdmin(siteId)) {
+            throw new AccessDeniedException("User can't access this site");
+        }
+
+        String siteName = keycloakService.getSiteNameById(siteId, null);
+        if (siteName == null) {
+            return List.of();
+        }
+
+        Map<String, UserRepresentation> candidates = new LinkedHashMap<>();
+        for (String roleName : List.of(keycloakService.getSiteAdminRoleName(siteName), KeycloakService.ROLE_GLOBAL_ADMIN)) {
+            keycloakService.getUsersByRole(roleName).forEach(user -> candidates.putIfAbsent(user.getId(), user));
+        }
+
+        List<UserRepresentation> admins = candidates.values().stream()
+                .filter(user -> keycloakService.isUserInGroup(user.getId(), siteId))
+                .toList();
+        return userMapper.toDto(admins);
     }
     
     /**
      * Add user to site
      */
     public void addUserToSite(String userId, String siteId, String requesterUserId) throws AccessDeniedException {
-        if (!keycloakService.hasGlobalAdminRole(requesterUserId) &&
-                !keycloakService.isUserSiteAdmin(requesterUserId, siteId)) {
+        if (!accessContextService.getAccessContext(requesterUserId).isSiteAdmin(siteId)) {
             throw new AccessDeniedException("User can't add new users to this site");
         }
 
         boolean added = keycloakService.addUserToKeycloakGroup(userId, siteId);
         
         if (added) {
+            accessContextService.invalidate(userId);
 
             String siteName = keycloakService.getSiteNameById(siteId, "Unknown site");
 
@@ -230,17 +268,18 @@ public class SiteService {
      */
     public void removeUserFromSite(String userId, String siteId, String requesterUserId) throws AccessDeniedException {
 
-        if (!keycloakService.hasGlobalAdminRole(requesterUserId) &&
-                !keycloakService.isUserSiteAdmin(requesterUserId, siteId)) {
+        AccessContext access = accessContextService.getAccessContext(requesterUserId);
+        if (!access.isSiteAdmin(siteId)) {
             throw new AccessDeniedException("User can't add new users to this site");
         }
 
-        // Prevent removing yourself from a site
-        if (userId.equals(requesterUserId) && keycloakService.isUserSiteAdmin(requesterUserId, siteId)) {
+        // Prevent site admins from removing themselves; a global admin who is a plain member may leave
+        if (userId.equals(requesterUserId) && access.getAdminSiteIds().contains(siteId)) {
             throw new IllegalStateException("Sites admins cannot remove themselves from their site");
         }
         
         keycloakService.removeUserFromSite(userId, siteId);
+        accessContextService.invalidate(userId);
         
         String siteName = keycloakService.getSiteNameById(siteId, "Unknown site");
         
@@ -10,7 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * Service for managing SSH keys in the database
@@ -20,6 +20,9 @@ import java.util.Optional;
 @Slf4j
 public class SshKeyService {
     
+    // Oracle accepts at most 1000 expressions in an IN list
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    
     private final SshKeyRepository sshKeyRepository;
     private final SshKeyValidator sshKeyValidator;
     
@@ -34,6 +37,24 @@ public class SshKeyService {
                 .map(SshKey::getSshKey);
     }
     
+    /**
+     * Get the SSH keys of several users with one query per chunk of IDs
+     * (chunked to stay within the bind parameter limits of the databases)
+     * 
+     * @param userIds The Keycloak user IDs
+     * @return The SSH keys by user ID, users without a key are absent
+     */
+    public Map<String, String> getUserSshKeys(Collection<String> userIds) {
+        List<String> ids = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        Map<String, String> keys = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+            sshKeyRepository.findByUserIdIn(chunk)
+                    .forEach(key -> keys.put(key.getUserId(), key.getSshKey()));
+        }
+        return keys;
+    }
+    
     /**
      * Save or update SSH key for a user
      * 
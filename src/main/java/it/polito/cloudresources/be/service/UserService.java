@@ -12,7 +12,6 @@ import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
@@ -28,6 +27,7 @@ import java.util.*;
 public class UserService {
 
     private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final AuditLogService auditLogService;
     private final EventService eventService;
     private final UserMapper userMapper;
@@ -39,26 +39,24 @@ public class UserService {
      * @return A list of all users
      */
     public List<UserDTO> getAllUsers(String userId) {
+        AccessContext access = accessContextService.getAccessContext(userId);
 
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        if (access.isGlobalAdmin()) {
             return userMapper.toDto(keycloakService.getUsers());
         }
 
-        List<String> groupsName = keycloakService.getUserAdminGroups(userId);
-        if (groupsName.isEmpty()) {
+        Set<String> adminSiteIds = access.getAdminSiteIds();
+        if (adminSiteIds.isEmpty()) {
             throw new AccessDeniedException("The user is not an administrator of any site");
         }
 
-        List<UserDTO> usersToReturn = new ArrayList<>(List.of());
-        for(String groupName : groupsName) {
-            Optional<GroupRepresentation> group = keycloakService.getGroupByName(groupName);
-            if(group.isPresent()) {
-                List<UserRepresentation> users = keycloakService.getUsersInGroup(group.get().getId());
-                usersToReturn.addAll(userMapper.toDto(users));
-            }
+        // Map the members of all the sites together, so that their details are loaded in bulk
+        List<UserRepresentation> users = new ArrayList<>();
+        for(String siteId : adminSiteIds) {
+            users.addAll(keycloakService.getUsersInGroup(siteId));
         }
 
-        return usersToReturn;
+        return userMapper.toDto(users);
     }
 
     /**
@@ -67,8 +65,9 @@ public class UserService {
      * @return Optional containing the user if found
      */
     public UserDTO getUserById(String id, String requesterUserId) {
-        if(!keycloakService.hasGlobalAdminRole(requesterUserId) &&
-           !keycloakService.getUserAdminGroups(requesterUserId).isEmpty() &&
+        AccessContext access = accessContextService.getAccessContext(requesterUserId);
+        if(!access.isGlobalAdmin() &&
+           access.isAnyAdmin() &&
            !(Objects.equals(id, requesterUserId))) {
             throw new AccessDeniedException("The user is neither a global admin nor a site admin and the requested user isn't the user itself");
         }
@@ -112,8 +111,7 @@ public class UserService {
      */
     public UserDTO createUser(CreateUserDTO createUserDTO, String password, String requesterUserId) {
 
-        if(keycloakService.getUserAdminGroups(requesterUserId).isEmpty() &&
-                !keycloakService.hasGlobalAdminRole(requesterUserId)) {
+        if(!accessContextService.getAccessContext(requesterUserId).isAnyAdmin()) {
             throw new AccessDeniedException("User can't create new users");
         }
         // Check if username already exists
@@ -168,8 +166,7 @@ public class UserService {
     public UserDTO updateUser(String id, UpdateUserDTO updateUserDTO, String requesterUserId) {
 
         if (!Objects.equals(id, requesterUserId) && 
-            !keycloakService.hasGlobalAdminRole(requesterUserId) && 
-            keycloakService.getUserAdminGroups(requesterUserId).isEmpty()) {
+            !accessContextService.getAccessContext(requesterUserId).isAnyAdmin()) {
             throw new AccessDeniedException("User does not have enough privileges");
         }   
         
@@ -281,8 +278,8 @@ public class UserService {
     @Transactional
     public boolean deleteUser(String deleteKeycloakId, String currentKeycloakId) {
         // Get username for logging before deletion
-        if (!keycloakService.hasGlobalAdminRole(currentKeycloakId) &&
-                !keycloakService.getUserAdminGroups(currentKeycloakId).isEmpty()) {
+        AccessContext access = accessContextService.getAccessContext(currentKeycloakId);
+        if (!access.isGlobalAdmin() && access.isAnyAdmin()) {
             throw new AccessDeniedException("User does not have enough privileges");
         }
         Optional<UserRepresentation> user = keycloakService.getUserById(deleteKeycloakId);
@@ -315,8 +312,8 @@ public class UserService {
      * @return List of users with the specified role
      */
     public List<UserDTO> getUsersByRole(String role, String requesterId) {
-        if (!keycloakService.hasGlobalAdminRole(requesterId) &&
-                !keycloakService.getUserAdminGroups(requesterId).isEmpty()) {
+        AccessContext access = accessContextService.getAccessContext(requesterId);
+        if (!access.isGlobalAdmin() && access.isAnyAdmin()) {
             throw new AccessDeniedException("User does not have enough privileges");
         }
 
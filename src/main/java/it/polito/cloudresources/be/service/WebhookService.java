@@ -33,11 +33,16 @@ import javax.crypto.spec.SecretKeySpec;
 
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service for webhook operations
@@ -47,6 +52,9 @@ import java.util.Optional;
 @Slf4j
 public class WebhookService {
 
+    // Retries overdue by more than this are dropped rather than sent late
+    private static final Duration RETRY_EXPIRY = Duration.ofDays(1);
+
     private final WebhookConfigRepository webhookConfigRepository;
     private final WebhookLogRepository webhookLogRepository;
     private final ResourceRepository resourceRepository;
@@ -55,6 +63,7 @@ public class WebhookService {
     private final ObjectMapper objectMapper;
     private final AuditLogService auditLogService;
     private final KeycloakService keycloakService;
+    private final AccessContextService accessContextService;
     private final RestTemplate restTemplate;
     
     /**
@@ -217,12 +226,14 @@ public class WebhookService {
     public List<WebhookConfigDTO> getAllWebhooks(String userId) {
         List<WebhookConfig> webhooks;
         
+        AccessContext access = accessContextService.getAccessContext(userId);
+
         // Global admins can see all webhooks
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        if (access.isGlobalAdmin()) {
             webhooks = webhookConfigRepository.findAll();
         } else {
             // Get sites where the user is an admin
-            List<String> adminSites = keycloakService.getUserAdminGroupIds(userId);
+            Set<String> adminSites = access.getAdminSiteIds();
             log.debug("userId: {}, adminSites: {}", userId, adminSites);
             // Get webhooks for resources in these sites
 
@@ -267,8 +278,10 @@ public class WebhookService {
         PageRequest pageRequest = PageRequest.of(
                 page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
         
+        AccessContext access = accessContextService.getAccessContext(userId);
+
         // Global admins can see all logs
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        if (access.isGlobalAdmin()) {
             if (success != null && query != null && !query.isEmpty()) {
                 // Filter by both success and query
                 return webhookLogRepository.findBySuccessAndResponseContainingIgnoreCase(
@@ -286,7 +299,7 @@ public class WebhookService {
         }
         
         // Site admins can only see logs for webhooks in their sites
-        List<String> adminSites = keycloakService.getUserAdminGroups(userId);
+        Set<String> adminSites = access.getAdminSiteIds();
         
         if (adminSites.isEmpty()) {
             // User is not admin of any site, return empty page
@@ -367,6 +380,41 @@ public class WebhookService {
         }
     }
     
+    /**
+     * Process the same event type for many events at once, e.g. a batch of bookings. The relevant
+     * webhooks are looked up once per resource instead of once per event; each webhook still gets
+     * one call per event, with the same payload as {@link #processResourceEvent}.
+     *
+     * @param eventType The type of event
+     * @param events The events, with their resource
+     */
+    @Async
+    @Transactional
+    public void processResourceEventBatch(WebhookEventType eventType, List<Event> events) {
+        try {
+            Map<Long, List<Event>> eventsByResource = events.stream()
+                    .collect(Collectors.groupingBy(event -> event.getResource().getId(), LinkedHashMap::new, Collectors.toList()));
+
+            log.debug("Processing {} {} events on {} resources", events.size(), eventType, eventsByResource.size());
+
+            eventsByResource.forEach((resourceId, resourceEvents) -> {
+                List<WebhookConfig> webhooks = webhookConfigRepository.findRelevantWebhooksForResourceEvent(resourceId, eventType);
+                for (WebhookConfig webhook : webhooks) {
+                    for (Event event : resourceEvents) {
+                        try {
+                            executeWebhook(webhook, eventType, event, event.getResource());
+                        } catch (Exception e) {
+                            log.error("Error executing webhook {}: {}", webhook.getName(), e.getMessage());
+                            scheduleRetry(webhook, eventType, event, event.getResource());
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error processing resource event batch: {}", e.getMessage(), e);
+        }
+    }
+    
     /**
      * Execute a test webhook
      * 
@@ -401,8 +449,7 @@ public class WebhookService {
                 }
             }
             
-            executeWebhook(webhook, WebhookEventType.ALL, testData, resource);
-            return true;
+            return executeWebhook(webhook, WebhookEventType.ALL, testData, resource);
         } catch (Exception e) {
             log.error("Error testing webhook: {}", e.getMessage(), e);
             return false;
@@ -416,9 +463,10 @@ public class WebhookService {
      * @param eventType The event type
      * @param data The event data
      * @param resource The resource that triggered the event
+     * @return true if the endpoint accepted the call; a failed call is logged and retried later
      * @throws JsonProcessingException If there's an error serializing the payload
      */
-    private void executeWebhook(WebhookConfig webhook, WebhookEventType eventType, Object data, Resource resource) 
+    private boolean executeWebhook(WebhookConfig webhook, WebhookEventType eventType, Object data, Resource resource) 
             throws JsonProcessingException {
         // Create payload
         WebhookPayload payload = new WebhookPayload(
@@ -428,66 +476,66 @@ public class WebhookService {
                 data
         );
         
-        String payloadJson = safeSerializePayload(payload);
+        WebhookLog webhookLog = new WebhookLog();
+        webhookLog.setWebhook(webhook);
+        webhookLog.setEventType(eventType);
+        webhookLog.setPayload(safeSerializePayload(payload));
+        webhookLog.setResource(resource);
+        
+        return deliver(webhookLog);
+    }
+    
+    /**
+     * Send the payload of a webhook log and record the outcome on the same log: a successful call
+     * closes it, a failed one schedules its next retry, if any is left
+     * 
+     * @param webhookLog The log of the call, new or being retried
+     * @return true if the endpoint accepted the call
+     */
+    private boolean deliver(WebhookLog webhookLog) {
+        WebhookConfig webhook = webhookLog.getWebhook();
         
         // Set up headers with signature
-        HttpHeaders headers = createHeaders(webhook, payloadJson);
+        HttpHeaders headers = createHeaders(webhook, webhookLog.getPayload());
         
         log.debug("Sending webhook to URL: {}", webhook.getUrl());
         
-        // Execute HTTP call
-        ResponseEntity<String> response;
         try {
-            response = restTemplate.exchange(
+            ResponseEntity<String> response = restTemplate.exchange(
                     webhook.getUrl(),
                     HttpMethod.POST,
-                    new HttpEntity<>(payloadJson, headers),
+                    new HttpEntity<>(webhookLog.getPayload(), headers),
                     String.class
             );
+            webhookLog.setStatusCode(response.getStatusCode().value());
+            webhookLog.setResponse(response.getBody());
+            webhookLog.setSuccess(response.getStatusCode().is2xxSuccessful());
         } catch (Exception e) {
             log.error("Webhook request failed: {}", e.getMessage());
-            
-            // Create a failure log
-            WebhookLog log = new WebhookLog();
-            log.setWebhook(webhook);
-            log.setEventType(eventType);
-            log.setPayload(payloadJson);
-            log.setStatusCode(null);
-            log.setResponse("Request failed: " + e.getMessage());
-            log.setSuccess(false);
-            log.setResource(resource);
-            
-            // Schedule retry
-            scheduleRetry(log);
-            
-            throw e;
+            webhookLog.setStatusCode(null);
+            webhookLog.setResponse("Request failed: " + e.getMessage());
+            webhookLog.setSuccess(false);
         }
         
-        // Log the result
-        WebhookLog webhookLog = new WebhookLog();
-        webhookLog.setWebhook(webhook);
-        webhookLog.setEventType(eventType);
-        webhookLog.setPayload(payloadJson);
-        webhookLog.setStatusCode(response.getStatusCode().value());
-        webhookLog.setResponse(response.getBody());
-        webhookLog.setSuccess(response.getStatusCode().is2xxSuccessful());
-        webhookLog.setResource(resource);
-        
-        webhookLogRepository.save(webhookLog);
+        if (webhookLog.isSuccess()) {
+            log.debug("Webhook successful with status code: {}", webhookLog.getStatusCode());
+            webhookLog.setNextRetryAt(null);
+            webhookLogRepository.save(webhookLog);
+            return true;
+        }
         
-        if (!webhookLog.isSuccess()) {
+        if (webhookLog.getStatusCode() != null) {
             log.error("Webhook failed with status code: {}", webhookLog.getStatusCode());
             logSystemEvent(
                     "Webhook failure", 
                     "Webhook " + webhook.getName() + " failed with status " + webhookLog.getStatusCode(),
                     AuditLog.LogSeverity.WARNING
             );
-            
-            // Schedule retry if necessary
-            scheduleRetry(webhookLog);
-        } else {
-            log.debug("Webhook successful with status code: {}", webhookLog.getStatusCode());
         }
+        
+        // Schedule retry if necessary
+        scheduleRetry(webhookLog);
+        return false;
     }
     
     /**
@@ -530,13 +578,16 @@ public class WebhookService {
     }
     
     /**
-     * Schedule a retry for a failed webhook log
+     * Schedule the next retry of a failed webhook log, or give up when all the retries were made.
+     * The retry count is the number of retries already made.
      * 
      * @param webhookLog The webhook log
      */
     private void scheduleRetry(WebhookLog webhookLog) {
         if (webhookLog.getRetryCount() >= webhookLog.getWebhook().getMaxRetries()) {
             log.debug("Max retries reached for webhook {}", webhookLog.getWebhook().getName());
+            webhookLog.setNextRetryAt(null);
+            webhookLogRepository.save(webhookLog);
             return;
         }
         
@@ -544,21 +595,28 @@ public class WebhookService {
         int retryCount = webhookLog.getRetryCount();
         int delaySeconds = webhookLog.getWebhook().getRetryDelaySeconds() * (int) Math.pow(2, retryCount);
         webhookLog.setNextRetryAt(ZonedDateTime.now(DateTimeConfig.DEFAULT_ZONE_ID).plusSeconds(delaySeconds));
-        webhookLog.setRetryCount(retryCount + 1);
         
         webhookLogRepository.save(webhookLog);
         
         log.debug("Scheduled retry {} for webhook {}, next attempt in {} seconds",
-        webhookLog.getRetryCount(), webhookLog.getWebhook().getName(), delaySeconds);
+        retryCount + 1, webhookLog.getWebhook().getName(), delaySeconds);
     }
     
     /**
-     * Process scheduled webhook retries
+     * Process scheduled webhook retries. Each due log is claimed before it is sent, so that it is sent
+     * once even with several instances, and the outcome is recorded on the log itself.
+     * Retries overdue by more than {@link #RETRY_EXPIRY}, e.g. left over while the job was not running,
+     * are dropped instead of being sent late.
      */
     @Scheduled(fixedRate = 60000) // Run every minute
     public void processRetries() {
         ZonedDateTime now = ZonedDateTime.now(DateTimeConfig.DEFAULT_ZONE_ID);
         
+        int expired = webhookLogRepository.cancelRetriesDueBefore(now.minus(RETRY_EXPIRY));
+        if (expired > 0) {
+            log.info("Dropped {} webhook retries overdue by more than {}", expired, RETRY_EXPIRY);
+        }
+        
         List<WebhookLog> pendingRetries = webhookLogRepository.findPendingRetries(now);
         
         if (!pendingRetries.isEmpty()) {
@@ -567,14 +625,14 @@ public class WebhookService {
         
         for (WebhookLog webhookLog : pendingRetries) {
             try {
-                // Parse the stored payload
-                WebhookPayload payload = objectMapper.readValue(webhookLog.getPayload(), WebhookPayload.class);
-                
-                // Execute the webhook
-                executeWebhook(webhookLog.getWebhook(), webhookLog.getEventType(), payload.getData(), webhookLog.getResource());
+                if (webhookLogRepository.claimRetry(webhookLog.getId(), webhookLog.getRetryCount()) == 0) {
+                    continue; // Taken by another instance
+                }
+                webhookLog.setRetryCount(webhookLog.getRetryCount() + 1);
+                webhookLog.setNextRetryAt(null);
+                deliver(webhookLog);
             } catch (Exception e) {
                 log.error("Retry failed for webhook log ID {}: {}", webhookLog.getId(), e.getMessage());
-                scheduleRetry(webhookLog);
             }
         }
     }
@@ -682,21 +740,18 @@ public class WebhookService {
      * Check if a user can manage webhooks for a resource
      */
     private boolean canManageWebhooksForResource(String userId, Resource resource) {
-        // Global admins can manage all webhooks
-        if (keycloakService.hasGlobalAdminRole(userId)) {
-            return true;
-        }
-        
-        // Site admins can manage webhooks for resources in their sites
-        return keycloakService.isUserSiteAdmin(userId, resource.getSiteId());
+        // Global admins can manage all webhooks, site admins the ones for resources in their sites
+        return accessContextService.getAccessContext(userId).isSiteAdmin(resource.getSiteId());
     }
     
     /**
      * Check if a user can manage a webhook
      */
     private boolean canManageWebhook(String userId, WebhookConfig webhook) {
+        AccessContext access = accessContextService.getAccessContext(userId);
+
         // Global admins can manage all webhooks
-        if (keycloakService.hasGlobalAdminRole(userId)) {
+        if (access.isGlobalAdmin()) {
             return true;
         }
         
@@ -707,7 +762,7 @@ public class WebhookService {
         }
         
         // Check if user is admin of the site
-        return keycloakService.isUserSiteAdmin(userId, siteId);
+        return access.isSiteAdmin(siteId);
     }
     
     /**
@@ -6,6 +6,7 @@ import it.polito.cloudresources.be.service.MockKeycloakService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -55,6 +56,19 @@ public class ControllerUtils {
                 .body(new ApiResponseDTO(false, message));
     }
 
+    /**
+     * Creates a 503 response telling the client to retry the request after a few seconds
+     *
+     * @param message The error message
+     * @param retryAfterSeconds The delay suggested to the client
+     * @return A ResponseEntity with a Retry-After header and an ApiResponseDTO containing the error details
+     */
+    public ResponseEntity<Object> createRetryLaterResponse(String message, int retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ApiResponseDTO(false, message));
+    }
+
     /**
      * Creates a success response with a message
      *
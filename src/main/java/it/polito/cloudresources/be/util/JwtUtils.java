@@ -102,6 +102,32 @@ public class JwtUtils {
         return Collections.emptyList();
     }
     
+    /**
+     * Extract group names from a group membership mapper claim of the JWT token.
+     * Full group paths (e.g. "/site") are reduced to the group name; subgroups (e.g. "/site/sub") are left out.
+     *
+     * @param jwt The JWT token
+     * @param claimName The name of the claim holding the groups
+     * @return List of group names or empty list if not found
+     */
+    public List<String> extractGroups(Jwt jwt, String claimName) {
+        if (jwt == null || !jwt.hasClaim(claimName)) {
+            return Collections.emptyList();
+        }
+
+        List<String> groups = jwt.getClaimAsStringList(claimName);
+        if (groups == null) {
+            return Collections.emptyList();
+        }
+
+        return groups.stream()
+                .map(group -> group.startsWith("/") ? group.substring(1) : group)
+                // Subgroup memberships do not make the user a member of the site, as with the admin API
+                .filter(group -> !group.isEmpty() && !group.contains("/"))
+                .distinct()
+                .toList();
+    }
+
     /**
      * Create a JwtAuthenticationToken from a Jwt object
      * 
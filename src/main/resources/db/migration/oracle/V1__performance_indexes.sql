@@ -0,0 +1,35 @@
+-- Indexes of the hot queries. Tables are created by Hibernate (ddl-auto: update) before the
+-- migrations run. Oracle has no CREATE INDEX IF NOT EXISTS before 23c: the indexes Hibernate
+-- created from earlier entity mappings, or existing ones on the same columns, are skipped.
+DECLARE
+    TYPE statement_list IS TABLE OF VARCHAR2(400);
+    statements statement_list := statement_list(
+        -- Conflict checks, availability and date range queries: a resource's events by time
+        'CREATE INDEX idx_events_resource_time ON events (resource_id, start_time, end_time)',
+        -- Events of a user
+        'CREATE INDEX idx_events_keycloak_id ON events (keycloak_id)',
+        -- Notifications of a user, read or unread, newest first
+        'CREATE INDEX idx_notifications_user_read ON notifications (keycloak_id, read, created_at)',
+        -- Audit log listing, newest first
+        'CREATE INDEX idx_audit_logs_timestamp ON audit_logs (timestamp)',
+        -- Pending webhook retries
+        'CREATE INDEX idx_webhook_logs_retry ON webhook_logs (success, next_retry_at)',
+        -- Resources of a site
+        'CREATE INDEX idx_resources_site_id ON resources (site_id)',
+        -- Ancestors of a resource (the primary key starts with ancestor_id)
+        'CREATE INDEX idx_resource_closure_descendant ON resource_closure (descendant_id, ancestor_id)'
+    );
+    name_in_use EXCEPTION;
+    PRAGMA EXCEPTION_INIT(name_in_use, -955);
+    columns_already_indexed EXCEPTION;
+    PRAGMA EXCEPTION_INIT(columns_already_indexed, -1408);
+BEGIN
+    FOR i IN 1 .. statements.COUNT LOOP
+        BEGIN
+            EXECUTE IMMEDIATE statements(i);
+        EXCEPTION
+            WHEN name_in_use OR columns_already_indexed THEN NULL;
+        END;
+    END LOOP;
+END;
+/
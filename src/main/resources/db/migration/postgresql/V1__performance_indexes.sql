@@ -0,0 +1,23 @@
+-- Indexes of the hot queries. Tables are created by Hibernate (ddl-auto: update) before the
+-- migrations run; IF NOT EXISTS skips the indexes Hibernate created from earlier entity mappings.
+
+-- Conflict checks, availability and date range queries: a resource's events by time
+CREATE INDEX IF NOT EXISTS idx_events_resource_time ON events (resource_id, start_time, end_time);
+
+-- Events of a user
+CREATE INDEX IF NOT EXISTS idx_events_keycloak_id ON events (keycloak_id);
+
+-- Notifications of a user, read or unread, newest first
+CREATE INDEX IF NOT EXISTS idx_notifications_user_read ON notifications (keycloak_id, read, created_at);
+
+-- Audit log listing, newest first
+CREATE INDEX IF NOT EXISTS idx_audit_logs_timestamp ON audit_logs (timestamp);
+
+-- Pending webhook retries
+CREATE INDEX IF NOT EXISTS idx_webhook_logs_retry ON webhook_logs (success, next_retry_at);
+
+-- Resources of a site
+CREATE INDEX IF NOT EXISTS idx_resources_site_id ON resources (site_id);
+
+-- Ancestors of a resource (the primary key starts with ancestor_id)
+CREATE INDEX IF NOT EXISTS idx_resource_closure_descendant ON resource_closure (descendant_id, ancestor_id);
@@ -0,0 +1,88 @@
+package it.polito.cloudresources.be.config.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevalidatingCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final Duration STALE_GRACE = Duration.ofMinutes(5);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicReference<String> keycloakValue = new AtomicReference<>("fresh");
+    private final AtomicInteger reloads = new AtomicInteger();
+
+    private RevalidatingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        LoadingCache<Object, Object> nativeCache = Caffeine.newBuilder()
+                .ticker(nanos::get)
+                .executor(Runnable::run)
+                .refreshAfterWrite(TTL.multipliedBy(3).dividedBy(4))
+                .expireAfterWrite(TTL.plus(STALE_GRACE))
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Object load(Object key) {
+                        return null;
+                    }
+
+                    @Override
+                    public Object reload(Object key, Object oldValue) {
+                        reloads.incrementAndGet();
+                        String value = keycloakValue.get();
+                        if (value == null) {
+                            throw new IllegalStateException("Keycloak is down");
+                        }
+                        return value;
+                    }
+                });
+        cache = new RevalidatingCache(new CaffeineCache("roles", nativeCache), new SimpleMeterRegistry(),
+                TTL, Duration.ofSeconds(1));
+        cache.put("user", "cached");
+    }
+
+    @Test
+    void freshEntryIsServedWithoutReload() {
+        advance(Duration.ofMinutes(1));
+
+        assertThat(cache.get("user", String.class)).isEqualTo("cached");
+        assertThat(reloads).hasValue(0);
+    }
+
+    @Test
+    void entryPastItsTtlIsReloadedBeforeBeingServed() {
+        advance(TTL.plusSeconds(1));
+
+        assertThat(cache.get("user", String.class)).isEqualTo("fresh");
+        assertThat(cache.get("user", () -> "loaded")).isEqualTo("fresh");
+        assertThat(reloads).hasValue(1);
+    }
+
+    @Test
+    void staleEntryIsServedOnlyWhileTheReloadFails() {
+        keycloakValue.set(null);
+        advance(TTL.plusSeconds(1));
+
+        assertThat(cache.get("user", String.class)).isEqualTo("cached");
+
+        advance(STALE_GRACE);
+        assertThat(cache.get("user")).isNull();
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,248 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.dto.AvailableSlotDTO;
+import it.polito.cloudresources.be.dto.FreeBusyDTO;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.model.ResourceStatus;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import it.polito.cloudresources.be.util.DateTimeUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.access.AccessDeniedException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityServiceTest {
+
+    private static final String USER_ID = "user";
+    private static final String SITE_ID = "site";
+    private static final ZonedDateTime BASE = ZonedDateTime.of(2030, 1, 7, 8, 0, 0, 0, DateTimeUtils.DEFAULT_ZONE_ID);
+
+    @Mock private ResourceRepository resourceRepository;
+    @Mock private EventRepository eventRepository;
+    @Mock private AccessContextService accessContextService;
+    @Mock private ResourceHierarchyService resourceHierarchyService;
+    @Mock private BookingIndex bookingIndex;
+
+    private final Map<Long, Set<Long>> relatedResourceIds = new HashMap<>();
+    private final Map<Long, List<BookingIndex.Booking>> bookings = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(accessContextService.getAccessContext(USER_ID))
+                .thenReturn(new AccessContext(USER_ID, false, false, Set.of(SITE_ID), Set.of(), Set.of()));
+    }
+
+    @Test
+    void longFreePeriodGivesBackToBackSlots() {
+        resource(1L);
+        booking(1L, at(4), at(5));
+
+        List<AvailableSlotDTO> slots = search(withIndex(), List.of(1L), 1, 0, 8, 10);
+
+        assertThat(starts(slots)).containsExactly(at(0), at(1), at(2), at(3), at(5), at(6), at(7));
+        assertThat(slots.get(0).getEnd().toInstant()).isEqualTo(at(1));
+    }
+
+    @Test
+    void slotsStopAtTheRequestedCount() {
+        resource(1L);
+
+        List<AvailableSlotDTO> slots = search(withIndex(), List.of(1L), 1, 0, 8, 3);
+
+        assertThat(starts(slots)).containsExactly(at(0), at(1), at(2));
+    }
+
+    @Test
+    void bookingsOfTheHierarchyAndShortGapsAreSkipped() {
+        resource(1L, 2L);
+        // The child is booked first, then the resource itself, leaving a one hour gap in between
+        booking(2L, at(0), at(2));
+        booking(1L, at(3), at(4));
+
+        List<AvailableSlotDTO> slots = search(withIndex(), List.of(1L), 2, 0, 7, 10);
+
+        assertThat(starts(slots)).containsExactly(at(4));
+    }
+
+    @Test
+    void slotsOfSeveralResourcesAreMergedEarliestFirst() {
+        resource(1L);
+        resource(2L);
+        booking(1L, at(0), at(2));
+        booking(2L, at(1), at(3));
+
+        List<AvailableSlotDTO> slots = search(withIndex(), List.of(1L, 2L), 1, 0, 4, 3);
+
+        assertThat(slots).extracting(AvailableSlotDTO::getResourceId).containsExactly(2L, 1L, 1L);
+        assertThat(starts(slots)).containsExactly(at(0), at(2), at(3));
+    }
+
+    @Test
+    void bookingsAreReadFromTheDatabaseWhenTheIndexIsDisabled() {
+        resource(1L);
+        when(eventRepository.findBookingsOverlappingInChunks(anyCollection(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{100L, 1L, BASE.plusHours(1), BASE.plusHours(2)}));
+        AvailabilityService availabilityService = availabilityService(false);
+
+        List<AvailableSlotDTO> slots = search(availabilityService, List.of(1L), 1, 0, 3, 10);
+
+        assertThat(starts(slots)).containsExactly(at(0), at(2));
+        verifyNoInteractions(bookingIndex);
+    }
+
+    @Test
+    void freeBusyRunsStartWithAFreeRunAndSlotsAreHalfOpen() {
+        resource(1L);
+        // Ends exactly at the start of the second slot, which stays free
+        booking(1L, at(0), at(1));
+        booking(1L, BASE.plusMinutes(150).toInstant(), BASE.plusMinutes(170).toInstant());
+
+        FreeBusyDTO freeBusy = freeBusy(withIndex(), BASE, BASE.plusHours(5), FreeBusyDTO.Encoding.RLE);
+
+        assertThat(freeBusy.getSlotCount()).isEqualTo(5);
+        assertThat(freeBusy.getResources()).singleElement().satisfies(calendar -> {
+            assertThat(calendar.getRuns()).containsExactly(0, 1, 1, 1, 2);
+            assertThat(calendar.getBitmap()).isNull();
+        });
+    }
+
+    @Test
+    void freeBusyMarksTheBookingsOfTheHierarchy() {
+        resource(1L, 2L);
+        resource(3L);
+        booking(2L, at(1), at(3));
+
+        FreeBusyDTO freeBusy = freeBusy(withIndex(), BASE, BASE.plusHours(4), FreeBusyDTO.Encoding.BITMAP);
+
+        // Slots 1 and 2 busy, i.e. 0b0110
+        assertThat(freeBusy.getResources()).extracting(FreeBusyDTO.ResourceFreeBusy::getBitmap)
+                .containsExactly(Base64.getEncoder().encodeToString(new byte[]{6}), "");
+    }
+
+    @Test
+    void lastSlotCutByTheWindowIsStillAWholeSlot() {
+        resource(1L);
+        booking(1L, BASE.plusMinutes(80).toInstant(), at(4));
+
+        FreeBusyDTO freeBusy = freeBusy(withIndex(), BASE, BASE.plusMinutes(90), FreeBusyDTO.Encoding.RLE);
+
+        assertThat(freeBusy.getSlotCount()).isEqualTo(2);
+        assertThat(freeBusy.getResources().get(0).getRuns()).containsExactly(1, 1);
+        verify(bookingIndex).findBookings(anyCollection(), eq(BASE), eq(BASE.plusHours(2)));
+    }
+
+    @Test
+    void freeBusyIsReadFromTheIndexByDefault() {
+        resource(1L);
+        booking(1L, at(1), at(2));
+
+        FreeBusyDTO freeBusy = freeBusy(withIndex(), BASE, BASE.plusHours(3), FreeBusyDTO.Encoding.RLE);
+
+        assertThat(freeBusy.getResources().get(0).getRuns()).containsExactly(1, 1, 1);
+        verifyNoInteractions(eventRepository);
+    }
+
+    @Test
+    void freeBusyOfAWindowNotCoveredByTheIndexIsReadFromTheDatabase() {
+        resource(1L);
+        when(bookingIndex.covers(any())).thenReturn(false);
+        when(eventRepository.findBookingsOverlappingInChunks(anyCollection(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{100L, 1L, BASE.plusHours(1), BASE.plusHours(2)}));
+
+        FreeBusyDTO freeBusy = freeBusy(availabilityService(true), BASE, BASE.plusHours(3), FreeBusyDTO.Encoding.RLE);
+
+        assertThat(freeBusy.getResources().get(0).getRuns()).containsExactly(1, 1, 1);
+        verify(bookingIndex, never()).findBookings(anyCollection(), any(), any());
+    }
+
+    @Test
+    void freeBusyOfAnInaccessibleSiteIsDenied() {
+        AvailabilityService availabilityService = availabilityService(false);
+
+        assertThatThrownBy(() -> availabilityService.getFreeBusy("other", BASE, BASE.plusHours(4), 60,
+                FreeBusyDTO.Encoding.RLE, USER_ID)).isInstanceOf(AccessDeniedException.class);
+        verifyNoInteractions(resourceRepository, bookingIndex, eventRepository);
+    }
+
+    private AvailabilityService withIndex() {
+        when(bookingIndex.covers(any())).thenReturn(true);
+        when(bookingIndex.findBookings(anyCollection(), any(), any())).thenReturn(bookings);
+        return availabilityService(true);
+    }
+
+    private AvailabilityService availabilityService(boolean useBookingIndex) {
+        return new AvailabilityService(resourceRepository, eventRepository, accessContextService,
+                resourceHierarchyService, bookingIndex, new DateTimeUtils(), useBookingIndex);
+    }
+
+    private List<AvailableSlotDTO> search(AvailabilityService availabilityService, List<Long> resourceIds,
+                                          int hours, int windowStart, int windowEnd, int count) {
+        when(resourceHierarchyService.getRelatedResourceIds(anyCollection())).thenReturn(relatedResourceIds);
+        when(resourceRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Resource> resources = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(id -> resources.add(resourceEntity(id)));
+            return resources;
+        });
+        return availabilityService.searchAvailability(resourceIds, null, Duration.ofHours(hours),
+                BASE.plusHours(windowStart), BASE.plusHours(windowEnd), count, USER_ID);
+    }
+
+    /**
+     * The hourly free/busy calendar of the resources declared in the test, in ID order
+     */
+    private FreeBusyDTO freeBusy(AvailabilityService availabilityService, ZonedDateTime from, ZonedDateTime to,
+                                 FreeBusyDTO.Encoding encoding) {
+        when(resourceHierarchyService.getRelatedResourceIds(anyCollection())).thenReturn(relatedResourceIds);
+        when(resourceRepository.findBySiteId(SITE_ID)).thenReturn(new TreeSet<>(relatedResourceIds.keySet()).stream()
+                .map(AvailabilityServiceTest::resourceEntity)
+                .toList());
+        return availabilityService.getFreeBusy(SITE_ID, from, to, 60, encoding, USER_ID);
+    }
+
+    private static Resource resourceEntity(Long id) {
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setName("resource " + id);
+        resource.setSiteId(SITE_ID);
+        resource.setStatus(ResourceStatus.ACTIVE);
+        return resource;
+    }
+
+    /**
+     * A resource with the given descendants, which all share its bookings
+     */
+    private void resource(Long id, Long... descendantIds) {
+        Set<Long> related = new HashSet<>(List.of(descendantIds));
+        related.add(id);
+        relatedResourceIds.put(id, related);
+    }
+
+    private void booking(Long resourceId, Instant start, Instant end) {
+        bookings.computeIfAbsent(resourceId, id -> new ArrayList<>())
+                .add(new BookingIndex.Booking(bookings.size() + 100L, start.toEpochMilli(), end.toEpochMilli()));
+    }
+
+    private static List<Instant> starts(List<AvailableSlotDTO> slots) {
+        return slots.stream().map(slot -> slot.getStart().toInstant()).toList();
+    }
+
+    private static Instant at(int hours) {
+        return BASE.plusHours(hours).toInstant();
+    }
+}
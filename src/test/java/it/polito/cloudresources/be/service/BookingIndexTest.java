@@ -0,0 +1,199 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.model.Event;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BookingIndexTest {
+
+    // Bookings must not be over when the index is loaded, so they are placed in the future
+    private static final ZonedDateTime BASE = ZonedDateTime.now(ZoneOffset.UTC).plusDays(1).truncatedTo(ChronoUnit.DAYS);
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private ResourceRepository resourceRepository;
+
+    private BookingIndex bookingIndex;
+
+    private final List<Object[]> parentLinks = new ArrayList<>();
+    private final List<Object[]> bookings = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        bookingIndex = new BookingIndex(eventRepository, resourceRepository);
+    }
+
+    @Test
+    void coversNothingBeforeTheFirstLoad() {
+        assertThat(bookingIndex.isReady()).isFalse();
+        assertThat(bookingIndex.covers(at(10))).isFalse();
+        assertThat(bookingIndex.getRelatedResourceIds(1L)).isEmpty();
+    }
+
+    @Test
+    void periodsAreHalfOpen() {
+        resource(1L, null);
+        booking(100L, 1L, at(10), at(12));
+        load();
+
+        assertThat(bookingIndex.covers(at(10))).isTrue();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(12), at(13), null)).isFalse();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(9), at(10), null)).isFalse();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(11), at(12), null)).isTrue();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(9), at(11), null)).isTrue();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(8), at(14), null)).isTrue();
+    }
+
+    @Test
+    void excludedEventIsIgnored() {
+        resource(1L, null);
+        booking(100L, 1L, at(10), at(12));
+        booking(101L, 1L, at(12), at(14));
+        load();
+
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(11), at(12), 100L)).isFalse();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(11), at(13), 100L)).isTrue();
+    }
+
+    @Test
+    void bookingStartingLongBeforeThePeriodIsFound() {
+        resource(1L, null);
+        booking(100L, 1L, at(0), at(24 * 30));
+        booking(101L, 1L, at(24 * 30), at(24 * 30 + 2));
+        load();
+
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(24 * 10), at(24 * 10 + 1), null)).isTrue();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(24 * 30 + 2), at(24 * 30 + 3), null)).isFalse();
+        assertThat(bookingIndex.findBookings(Set.of(1L), at(24 * 29), at(24 * 31)).get(1L))
+                .extracting(BookingIndex.Booking::eventId)
+                .containsExactly(100L, 101L);
+    }
+
+    @Test
+    void findBookingsReturnsOnlyOverlappingBookingsSortedByStart() {
+        resource(1L, null);
+        resource(2L, null);
+        booking(102L, 1L, at(14), at(16));
+        booking(100L, 1L, at(8), at(10));
+        booking(101L, 1L, at(10), at(12));
+        booking(200L, 2L, at(20), at(22));
+        load();
+
+        Map<Long, List<BookingIndex.Booking>> found = bookingIndex.findBookings(Set.of(1L, 2L), at(10), at(15));
+
+        assertThat(found).containsOnlyKeys(1L);
+        assertThat(found.get(1L)).extracting(BookingIndex.Booking::eventId).containsExactly(101L, 102L);
+    }
+
+    @Test
+    void relatedResourcesAreAncestorsAndDescendants() {
+        resource(1L, null);
+        resource(2L, 1L);
+        resource(3L, 2L);
+        resource(4L, 1L);
+        resource(5L, null);
+        load();
+
+        assertThat(bookingIndex.getRelatedResourceIds(2L)).contains(Set.of(1L, 2L, 3L));
+        assertThat(bookingIndex.getRelatedResourceIds(1L)).contains(Set.of(1L, 2L, 3L, 4L));
+        assertThat(bookingIndex.getRelatedResourceIds(5L)).contains(Set.of(5L));
+        assertThat(bookingIndex.getRelatedResourceIds(6L)).isEmpty();
+    }
+
+    @Test
+    void updatesOutsideTransactionsAreAppliedImmediately() {
+        resource(1L, null);
+        load();
+
+        bookingIndex.eventSaved(event(100L, 1L, at(10), at(12)));
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(11), at(13), null)).isTrue();
+
+        bookingIndex.eventSaved(event(100L, 1L, at(14), at(16)));
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(11), at(13), null)).isFalse();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(15), at(16), null)).isTrue();
+
+        bookingIndex.eventDeleted(100L);
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(15), at(16), null)).isFalse();
+    }
+
+    @Test
+    void updatesCommittedDuringALoadAreReplayedOnTheNewState() {
+        resource(1L, null);
+        booking(100L, 1L, at(10), at(12));
+        when(resourceRepository.findAllParentLinks()).thenReturn(parentLinks);
+        // The load reads the bookings before these changes commit
+        when(eventRepository.findBookingsEndingAfter(any())).thenAnswer(invocation -> {
+            List<Object[]> loaded = new ArrayList<>(bookings);
+            bookingIndex.eventSaved(event(101L, 1L, at(14), at(16)));
+            bookingIndex.eventDeleted(100L);
+            return loaded;
+        });
+
+        bookingIndex.sync();
+
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(14), at(15), null)).isTrue();
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(10), at(12), null)).isFalse();
+    }
+
+    @Test
+    void failedLoadKeepsThePreviousIndex() {
+        resource(1L, null);
+        booking(100L, 1L, at(10), at(12));
+        load();
+
+        when(eventRepository.findBookingsEndingAfter(any())).thenThrow(new IllegalStateException("database down"));
+        bookingIndex.sync();
+
+        assertThat(bookingIndex.hasConflict(Set.of(1L), at(10), at(11), null)).isTrue();
+    }
+
+    private void load() {
+        when(resourceRepository.findAllParentLinks()).thenReturn(parentLinks);
+        when(eventRepository.findBookingsEndingAfter(any())).thenReturn(bookings);
+        bookingIndex.sync();
+    }
+
+    private void resource(Long id, Long parentId) {
+        parentLinks.add(new Object[]{id, parentId});
+    }
+
+    private void booking(Long eventId, Long resourceId, ZonedDateTime start, ZonedDateTime end) {
+        bookings.add(new Object[]{eventId, resourceId, start, end});
+    }
+
+    private static Event event(Long eventId, Long resourceId, ZonedDateTime start, ZonedDateTime end) {
+        Resource resource = new Resource();
+        resource.setId(resourceId);
+        Event event = new Event();
+        event.setId(eventId);
+        event.setResource(resource);
+        event.setStart(start);
+        event.setEnd(end);
+        return event;
+    }
+
+    private static ZonedDateTime at(int hours) {
+        return BASE.plusHours(hours);
+    }
+}
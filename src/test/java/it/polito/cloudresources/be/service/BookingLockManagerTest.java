@@ -0,0 +1,173 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookingLockManagerTest {
+
+    @Mock
+    private ResourceHierarchyService resourceHierarchyService;
+
+    @Mock
+    private ResourceRepository resourceRepository;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void locksRequireATransaction() {
+        BookingLockManager lockManager = lockManager(1000);
+
+        assertThatThrownBy(() -> lockManager.lockHierarchies(List.of(1L)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void concurrentBookingsInTheSameHierarchyAreSerialized() throws Exception {
+        // Two sub-resources of the same root
+        when(resourceHierarchyService.getRootId(2L)).thenReturn(1L);
+        when(resourceHierarchyService.getRootId(3L)).thenReturn(1L);
+        BookingLockManager lockManager = lockManager(5000);
+        List<Long> booked = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Check then save, as createEvent does: without the lock both would see the hierarchy free
+        Callable<Boolean> bookSecond = () -> book(lockManager, 2L, booked, start);
+        Callable<Boolean> bookThird = () -> book(lockManager, 3L, booked, start);
+        Future<Boolean> second = executor.submit(bookSecond);
+        Future<Boolean> third = executor.submit(bookThird);
+        start.countDown();
+
+        assertThat(List.of(second.get(10, TimeUnit.SECONDS), third.get(10, TimeUnit.SECONDS)))
+                .containsExactlyInAnyOrder(true, false);
+        assertThat(booked).hasSize(1);
+        verify(resourceRepository, times(2)).lockById(1L);
+    }
+
+    @Test
+    void lockTimeoutIsReportedAsBusy() throws Exception {
+        when(resourceHierarchyService.getRootId(1L)).thenReturn(1L);
+        BookingLockManager lockManager = lockManager(100);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> holder = executor.submit(() -> inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(1L));
+            locked.countDown();
+            release.await();
+            return null;
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(1L));
+            return null;
+        })).isInstanceOf(ResourceBusyException.class);
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(1L));
+            return null;
+        });
+    }
+
+    @Test
+    void databaseLockTimeoutIsReportedAsBusyAndReleasesTheStripes() throws Exception {
+        when(resourceHierarchyService.getRootId(1L)).thenReturn(1L);
+        when(resourceRepository.lockById(1L))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(Optional.empty());
+        BookingLockManager lockManager = lockManager(100);
+
+        assertThatThrownBy(() -> inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(1L));
+            return null;
+        })).isInstanceOf(ResourceBusyException.class);
+
+        // Taken from another thread, which would time out if the stripe was still held
+        executor.submit(() -> inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(1L));
+            return null;
+        })).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void hierarchyChangedWhileLockingIsLockedAgain() throws Exception {
+        // Moved from the hierarchy of 1 to the one of 2 while waiting for the lock
+        when(resourceHierarchyService.getRootId(5L)).thenReturn(1L, 2L);
+        BookingLockManager lockManager = lockManager(1000);
+
+        inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(5L));
+            return null;
+        });
+
+        verify(resourceRepository).lockById(1L);
+        verify(resourceRepository).lockById(2L);
+        verify(resourceHierarchyService, times(3)).getRootId(5L);
+    }
+
+    @Test
+    void hierarchyChangingOnEveryAttemptIsReportedAsBusy() {
+        when(resourceHierarchyService.getRootId(5L)).thenReturn(1L, 2L, 3L, 4L);
+        BookingLockManager lockManager = lockManager(1000);
+
+        assertThatThrownBy(() -> inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(5L));
+            return null;
+        })).isInstanceOf(ResourceBusyException.class);
+    }
+
+    private BookingLockManager lockManager(long timeoutMs) {
+        return new BookingLockManager(resourceHierarchyService, resourceRepository, 16, timeoutMs, true);
+    }
+
+    private static boolean book(BookingLockManager lockManager, Long resourceId, List<Long> booked,
+                                CountDownLatch start) throws Exception {
+        start.await();
+        return inTransaction(() -> {
+            lockManager.lockHierarchies(List.of(resourceId));
+            boolean free = booked.isEmpty();
+            Thread.sleep(50);
+            if (free) {
+                booked.add(resourceId);
+            }
+            return free;
+        });
+    }
+
+    /**
+     * Runs the action with transaction synchronization active, completing it afterwards as a commit would
+     */
+    private static <T> T inTransaction(Callable<T> action) throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            return action.call();
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.dto.EventBatchRequestDTO;
+import it.polito.cloudresources.be.dto.EventBatchResultDTO;
+import it.polito.cloudresources.be.dto.EventDTO;
+import it.polito.cloudresources.be.mapper.EventMapper;
+import it.polito.cloudresources.be.model.Event;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.model.ResourceStatus;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import it.polito.cloudresources.be.util.DateTimeUtils;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EventServiceBatchTest {
+
+    private static final String USER_ID = "user";
+    private static final String SITE_ID = "site";
+    private static final ZonedDateTime BASE = ZonedDateTime.of(2030, 1, 7, 8, 0, 0, 0, ZoneOffset.UTC);
+
+    @Mock private EventRepository eventRepository;
+    @Mock private ResourceRepository resourceRepository;
+    @Mock private NotificationService notificationService;
+    @Mock private ResourceService resourceService;
+    @Mock private KeycloakService keycloakService;
+    @Mock private AccessContextService accessContextService;
+    @Mock private AuditLogService auditLogService;
+    @Mock private WebhookService webhookService;
+    @Mock private EventMapper eventMapper;
+    @Mock private BookingIndex bookingIndex;
+    @Mock private ResourceHierarchyService resourceHierarchyService;
+    @Mock private BookingLockManager bookingLockManager;
+    @Mock private EntityManager entityManager;
+
+    private EventService eventService;
+
+    @BeforeEach
+    void setUp() {
+        eventService = new EventService(eventRepository, resourceRepository, notificationService, resourceService,
+                keycloakService, accessContextService, auditLogService, webhookService, eventMapper, new DateTimeUtils(),
+                bookingIndex, resourceHierarchyService, bookingLockManager, entityManager,
+                Validation.buildDefaultValidatorFactory().getValidator());
+
+        Resource resource = new Resource();
+        resource.setId(1L);
+        resource.setSiteId(SITE_ID);
+        resource.setStatus(ResourceStatus.ACTIVE);
+        when(resourceRepository.findAllById(any())).thenReturn(List.of(resource));
+        when(accessContextService.getAccessContext(USER_ID))
+                .thenReturn(new AccessContext(USER_ID, false, false, Set.of(SITE_ID), Set.of(), Set.of()));
+        when(keycloakService.getUsersByIds(any())).thenReturn(Map.of(USER_ID, new UserRepresentation()));
+        when(resourceHierarchyService.getRelatedResourceIds(anyCollection())).thenReturn(Map.of(1L, Set.of(1L)));
+
+        AtomicLong ids = new AtomicLong(100);
+        when(eventMapper.toEntity(any(EventDTO.class))).thenAnswer(invocation -> {
+            EventDTO dto = invocation.getArgument(0);
+            Event event = new Event();
+            event.setTitle(dto.getTitle());
+            event.setStart(dto.getStart());
+            event.setEnd(dto.getEnd());
+            event.setResource(resource);
+            return event;
+        });
+        when(eventRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Event> events = invocation.getArgument(0);
+            events.forEach(event -> event.setId(ids.incrementAndGet()));
+            return events;
+        });
+        when(eventMapper.toDto(anyList())).thenAnswer(invocation -> {
+            List<Event> events = invocation.getArgument(0);
+            List<EventDTO> dtos = new ArrayList<>();
+            events.forEach(event -> dtos.add(booking(event.getTitle(), event.getStart(), event.getEnd())));
+            return dtos;
+        });
+    }
+
+    @Test
+    void allOrNothingCreatesNothingWhenTwoBookingsOfTheBatchOverlap() {
+        EventBatchResultDTO result = eventService.createEvents(request(EventBatchRequestDTO.Mode.ALL_OR_NOTHING,
+                booking("first", at(0), at(2)),
+                booking("overlapping", at(1), at(3)),
+                booking("after", at(2), at(4))), USER_ID);
+
+        assertThat(result.getCreated()).isEmpty();
+        assertThat(result.getRejected()).extracting(EventBatchResultDTO.Rejection::getIndex).containsExactly(1);
+        assertThat(result.getRejected().get(0).getMessage()).contains("another booking of the batch");
+        verify(eventRepository, never()).saveAll(anyList());
+        verifyNoInteractions(webhookService, notificationService);
+    }
+
+    @Test
+    void bestEffortCreatesTheBookingsThatDoNotOverlap() {
+        EventBatchResultDTO result = eventService.createEvents(request(EventBatchRequestDTO.Mode.BEST_EFFORT,
+                booking("first", at(0), at(2)),
+                booking("overlapping", at(1), at(3)),
+                booking("after", at(2), at(4))), USER_ID);
+
+        assertThat(result.getCreated()).extracting(EventDTO::getTitle).containsExactly("first", "after");
+        assertThat(result.getRejected()).extracting(EventBatchResultDTO.Rejection::getIndex).containsExactly(1);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Event>> saved = ArgumentCaptor.forClass(List.class);
+        verify(eventRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(Event::getTitle).containsExactly("first", "after");
+        verify(bookingLockManager).lockHierarchies(Set.of(1L));
+        verify(notificationService).createSystemNotification(startsWith("2 new bookings created"), anyString());
+    }
+
+    @Test
+    void bookingsOverlappingExistingOnesAreRejected() {
+        when(eventRepository.findBookingsOverlappingInChunks(anyCollection(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{50L, 1L, at(3), at(5)}));
+
+        EventBatchResultDTO result = eventService.createEvents(request(EventBatchRequestDTO.Mode.BEST_EFFORT,
+                booking("first", at(0), at(2)),
+                booking("overlapping", at(4), at(6))), USER_ID);
+
+        assertThat(result.getCreated()).extracting(EventDTO::getTitle).containsExactly("first");
+        assertThat(result.getRejected()).extracting(EventBatchResultDTO.Rejection::getIndex).containsExactly(1);
+        assertThat(result.getRejected().get(0).getMessage()).contains("existing bookings");
+    }
+
+    @Test
+    void invalidBookingIsRejectedByItsIndex() {
+        EventDTO untitled = booking(" ", at(0), at(2));
+        EventDTO withoutStart = booking("no start", null, at(2));
+
+        EventBatchResultDTO result = eventService.createEvents(request(EventBatchRequestDTO.Mode.BEST_EFFORT,
+                untitled,
+                booking("valid", at(4), at(6)),
+                withoutStart), USER_ID);
+
+        assertThat(result.getCreated()).extracting(EventDTO::getTitle).containsExactly("valid");
+        assertThat(result.getRejected()).extracting(EventBatchResultDTO.Rejection::getIndex).containsExactly(0, 2);
+        assertThat(result.getRejected().get(0).getMessage()).isEqualTo("Title is required");
+        assertThat(result.getRejected().get(1).getMessage()).isEqualTo("Start date is required");
+    }
+
+    @Test
+    void touchingBookingsOfTheBatchAreAccepted() {
+        EventBatchResultDTO result = eventService.createEvents(request(EventBatchRequestDTO.Mode.ALL_OR_NOTHING,
+                booking("first", at(0), at(2)),
+                booking("second", at(2), at(4))), USER_ID);
+
+        assertThat(result.getRejected()).isEmpty();
+        assertThat(result.getCreated()).hasSize(2);
+    }
+
+    private static EventBatchRequestDTO request(EventBatchRequestDTO.Mode mode, EventDTO... events) {
+        return new EventBatchRequestDTO(new ArrayList<>(List.of(events)), mode);
+    }
+
+    private static EventDTO booking(String title, ZonedDateTime start, ZonedDateTime end) {
+        EventDTO dto = new EventDTO();
+        dto.setTitle(title);
+        dto.setStart(start);
+        dto.setEnd(end);
+        dto.setResourceId(1L);
+        return dto;
+    }
+
+    private static ZonedDateTime at(int hours) {
+        return BASE.plusHours(hours);
+    }
+}
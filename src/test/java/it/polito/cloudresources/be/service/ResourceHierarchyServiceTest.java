@@ -0,0 +1,202 @@
+package it.polito.cloudresources.be.service;
+
+import it.polito.cloudresources.be.model.Event;
+import it.polito.cloudresources.be.model.Resource;
+import it.polito.cloudresources.be.model.ResourceClosure;
+import it.polito.cloudresources.be.model.ResourceType;
+import it.polito.cloudresources.be.repository.EventRepository;
+import it.polito.cloudresources.be.repository.ResourceClosureRepository;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the closure table queries on the embedded database; the migrations are not needed by the
+ * schema generated for the test
+ */
+@DataJpaTest(properties = "spring.flyway.enabled=false")
+class ResourceHierarchyServiceTest {
+
+    @Autowired
+    private ResourceClosureRepository resourceClosureRepository;
+
+    @Autowired
+    private ResourceRepository resourceRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private ResourceHierarchyService resourceHierarchyService;
+
+    @BeforeEach
+    void setUp() {
+        resourceHierarchyService = new ResourceHierarchyService(resourceClosureRepository, resourceRepository, transactionTemplate);
+    }
+
+    @Test
+    void createdResourcesAreLinkedToAllTheirAncestors() {
+        create(1L, null);
+        create(2L, 1L);
+        create(3L, 2L);
+
+        assertThat(links()).containsExactlyInAnyOrder(
+                "1>1@0", "2>2@0", "3>3@0",
+                "1>2@1", "2>3@1",
+                "1>3@2");
+        assertThat(resourceHierarchyService.getRootId(3L)).isEqualTo(1L);
+        assertThat(resourceHierarchyService.getRootId(1L)).isEqualTo(1L);
+        assertThat(resourceHierarchyService.getRelatedResourceIds(2L)).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(resourceHierarchyService.isInSubtree(3L, 1L)).isTrue();
+        assertThat(resourceHierarchyService.isInSubtree(1L, 3L)).isFalse();
+    }
+
+    @Test
+    void movedSubtreeKeepsItsInnerLinksAndGetsTheNewAncestors() {
+        create(1L, null);
+        create(2L, 1L);
+        create(3L, 2L);
+        create(4L, 3L);
+        create(5L, null);
+        create(6L, 5L);
+
+        resourceHierarchyService.resourceMoved(2L, 6L);
+
+        assertThat(links()).containsExactlyInAnyOrder(
+                "1>1@0", "2>2@0", "3>3@0", "4>4@0", "5>5@0", "6>6@0",
+                "5>6@1", "6>2@1", "2>3@1", "3>4@1",
+                "5>2@2", "6>3@2", "2>4@2",
+                "5>3@3", "6>4@3",
+                "5>4@4");
+        assertThat(resourceHierarchyService.getRootId(4L)).isEqualTo(5L);
+        assertThat(resourceHierarchyService.getRelatedResourceIds(1L)).containsExactly(1L);
+        assertThat(resourceHierarchyService.getRelatedResourceIds(6L)).containsExactlyInAnyOrder(5L, 6L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void subtreeMovedToTheTopLevelBecomesAHierarchyOfItsOwn() {
+        create(1L, null);
+        create(2L, 1L);
+        create(3L, 2L);
+
+        resourceHierarchyService.resourceMoved(2L, null);
+
+        assertThat(links()).containsExactlyInAnyOrder("1>1@0", "2>2@0", "3>3@0", "2>3@1");
+        assertThat(resourceHierarchyService.getRootId(3L)).isEqualTo(2L);
+    }
+
+    @Test
+    void resourceCannotBeMovedBelowItsOwnSubtree() {
+        create(1L, null);
+        create(2L, 1L);
+        create(3L, 2L);
+
+        assertThatThrownBy(() -> resourceHierarchyService.resourceMoved(1L, 3L))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> resourceHierarchyService.resourceMoved(2L, 2L))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void deletedResourceIsUnlinked() {
+        create(1L, null);
+        create(2L, 1L);
+
+        resourceHierarchyService.resourceDeleted(2L);
+
+        assertThat(links()).containsExactly("1>1@0");
+    }
+
+    @Test
+    void closureTableIsRebuiltFromTheParentLinks() {
+        ResourceType type = new ResourceType();
+        type.setName("Server");
+        type.setSiteId("site");
+        entityManager.persist(type);
+        Resource root = persistResource("rack", type, null);
+        Resource server = persistResource("server", type, root);
+        Resource gpu = persistResource("gpu", type, server);
+        // A stale row that is not in the hierarchy
+        resourceClosureRepository.save(new ResourceClosure(gpu.getId(), root.getId(), 1));
+        entityManager.flush();
+
+        resourceHierarchyService.verifyClosureTable();
+        entityManager.flush();
+        entityManager.clear();
+
+        long r = root.getId(), s = server.getId(), g = gpu.getId();
+        assertThat(links()).containsExactlyInAnyOrder(
+                r + ">" + r + "@0", s + ">" + s + "@0", g + ">" + g + "@0",
+                r + ">" + s + "@1", s + ">" + g + "@1",
+                r + ">" + g + "@2");
+        assertThat(resourceHierarchyService.getRootId(g)).isEqualTo(r);
+    }
+
+    @Test
+    void resourceMissingFromTheClosureTableConflictsWithItsOwnBookings() {
+        ResourceType type = new ResourceType();
+        type.setName("Server");
+        type.setSiteId("site");
+        entityManager.persist(type);
+        Resource server = persistResource("server", type, null);
+        ZonedDateTime start = ZonedDateTime.of(2030, 1, 7, 8, 0, 0, 0, ZoneOffset.UTC);
+        Event booking = new Event();
+        booking.setTitle("booking");
+        booking.setKeycloakId("user");
+        booking.setResource(server);
+        booking.setStart(start);
+        booking.setEnd(start.plusHours(2));
+        entityManager.persist(booking);
+        entityManager.flush();
+
+        assertThat(resourceClosureRepository.findAll()).isEmpty();
+        assertThat(eventRepository.existsConflictInHierarchy(server.getId(), start.plusHours(1), start.plusHours(3), null))
+                .isTrue();
+        assertThat(eventRepository.existsConflictInHierarchy(server.getId(), start.plusHours(2), start.plusHours(3), null))
+                .isFalse();
+    }
+
+    private void create(Long resourceId, Long parentId) {
+        resourceHierarchyService.resourceCreated(resourceId, parentId);
+        entityManager.flush();
+    }
+
+    private Resource persistResource(String name, ResourceType type, Resource parent) {
+        Resource resource = new Resource();
+        resource.setName(name);
+        resource.setSpecs(name);
+        resource.setLocation("lab");
+        resource.setSiteId("site");
+        resource.setType(type);
+        resource.setParent(parent);
+        return entityManager.persist(resource);
+    }
+
+    /**
+     * The rows of the table as "ancestor>descendant@depth"
+     */
+    private Set<String> links() {
+        entityManager.flush();
+        entityManager.clear();
+        return resourceClosureRepository.findAll().stream()
+                .map(link -> link.getAncestorId() + ">" + link.getDescendantId() + "@" + link.getDepth())
+                .collect(Collectors.toSet());
+    }
+}
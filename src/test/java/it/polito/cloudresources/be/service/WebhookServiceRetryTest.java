@@ -0,0 +1,119 @@
+package it.polito.cloudresources.be.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.polito.cloudresources.be.mapper.WebhookMapper;
+import it.polito.cloudresources.be.model.WebhookConfig;
+import it.polito.cloudresources.be.model.WebhookEventType;
+import it.polito.cloudresources.be.model.WebhookLog;
+import it.polito.cloudresources.be.repository.ResourceRepository;
+import it.polito.cloudresources.be.repository.ResourceTypeRepository;
+import it.polito.cloudresources.be.repository.WebhookConfigRepository;
+import it.polito.cloudresources.be.repository.WebhookLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookServiceRetryTest {
+
+    private static final String URL = "https://example.org/hook";
+
+    @Mock private WebhookConfigRepository webhookConfigRepository;
+    @Mock private WebhookLogRepository webhookLogRepository;
+    @Mock private ResourceRepository resourceRepository;
+    @Mock private ResourceTypeRepository resourceTypeRepository;
+    @Mock private WebhookMapper webhookMapper;
+    @Mock private AuditLogService auditLogService;
+    @Mock private KeycloakService keycloakService;
+    @Mock private AccessContextService accessContextService;
+    @Mock private RestTemplate restTemplate;
+
+    private WebhookService webhookService;
+    private WebhookLog webhookLog;
+
+    @BeforeEach
+    void setUp() {
+        webhookService = new WebhookService(webhookConfigRepository, webhookLogRepository, resourceRepository,
+                resourceTypeRepository, webhookMapper, new ObjectMapper(), auditLogService, keycloakService,
+                accessContextService, restTemplate);
+
+        WebhookConfig webhook = new WebhookConfig();
+        webhook.setId(1L);
+        webhook.setName("hook");
+        webhook.setUrl(URL);
+        webhookLog = new WebhookLog();
+        webhookLog.setId(10L);
+        webhookLog.setWebhook(webhook);
+        webhookLog.setEventType(WebhookEventType.EVENT_CREATED);
+        webhookLog.setPayload("{}");
+        webhookLog.setNextRetryAt(ZonedDateTime.now().minusMinutes(1));
+        when(webhookLogRepository.findPendingRetries(any())).thenReturn(List.of(webhookLog));
+    }
+
+    @Test
+    void successfulRetryClosesTheOriginalLog() {
+        when(webhookLogRepository.claimRetry(10L, 0)).thenReturn(1);
+        when(restTemplate.exchange(eq(URL), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(ResponseEntity.ok("ok"));
+
+        webhookService.processRetries();
+
+        verify(webhookLogRepository, times(1)).save(webhookLog);
+        assertThat(webhookLog.isSuccess()).isTrue();
+        assertThat(webhookLog.getRetryCount()).isEqualTo(1);
+        assertThat(webhookLog.getNextRetryAt()).isNull();
+    }
+
+    @Test
+    void failedRetryIsRescheduledOnTheSameLog() {
+        when(webhookLogRepository.claimRetry(10L, 0)).thenReturn(1);
+        when(restTemplate.exchange(eq(URL), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new ResourceAccessException("connection refused"));
+
+        webhookService.processRetries();
+
+        verify(webhookLogRepository, times(1)).save(webhookLog);
+        assertThat(webhookLog.isSuccess()).isFalse();
+        assertThat(webhookLog.getRetryCount()).isEqualTo(1);
+        assertThat(webhookLog.getNextRetryAt()).isAfter(ZonedDateTime.now());
+    }
+
+    @Test
+    void failedLastRetryGivesUp() {
+        webhookLog.setRetryCount(2);
+        when(webhookLogRepository.claimRetry(10L, 2)).thenReturn(1);
+        when(restTemplate.exchange(eq(URL), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new ResourceAccessException("connection refused"));
+
+        webhookService.processRetries();
+
+        verify(webhookLogRepository, times(1)).save(webhookLog);
+        assertThat(webhookLog.getRetryCount()).isEqualTo(3);
+        assertThat(webhookLog.getNextRetryAt()).isNull();
+    }
+
+    @Test
+    void retryClaimedByAnotherInstanceIsNotSent() {
+        when(webhookLogRepository.claimRetry(10L, 0)).thenReturn(0);
+
+        webhookService.processRetries();
+
+        verifyNoInteractions(restTemplate);
+        verify(webhookLogRepository, never()).save(any());
+    }
+}